@@ -0,0 +1,136 @@
+package kademlia;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former base-2 string implementation of the common prefix length (and of the StateBuilder sort key) with the
+ * bit-level ones in Util and NodeKey. The setup checks that every path returns the same value on the generated keys, so
+ * the benchmark fails instead of reporting timings for diverging implementations.<br>
+ * Run with: gradle jmh
+ *
+ * @author Daniele Furlan, Maurizio Bonani
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixLenBenchmark {
+
+	private static final int SIZE = 1024;
+
+	@Param({ "160", "128", "32" })
+	public int bits;
+
+	private BigInteger[] a;
+	private BigInteger[] b;
+	private NodeKey[] ka;
+	private NodeKey[] kb;
+
+	@Setup
+	public void setup() {
+		KademliaCommonConfig.BITS = bits;
+		Random r = new Random(1234567890);
+		a = new BigInteger[SIZE];
+		b = new BigInteger[SIZE];
+		ka = new NodeKey[SIZE];
+		kb = new NodeKey[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			a[i] = new BigInteger(bits, r);
+			// a quarter of the pairs share a long prefix, as close neighbours do
+			b[i] = (i % 4 == 0) ? a[i].flipBit(r.nextInt(bits)) : new BigInteger(bits, r);
+			if (i % 64 == 0)
+				b[i] = a[i];
+			ka[i] = NodeKey.of(a[i]);
+			kb[i] = NodeKey.of(b[i]);
+		}
+
+		for (int i = 0; i < SIZE; i++) {
+			int expected = stringPrefixLen(a[i], b[i]);
+			if (Util.prefixLen(a[i], b[i]) != expected || Util.prefixLen(ka[i], kb[i]) != expected)
+				throw new IllegalStateException("prefixLen mismatch for " + a[i] + ", " + b[i]);
+			if (Integer.signum(put0(a[i]).compareTo(put0(b[i]))) != Integer.signum(ka[i].compareTo(kb[i])))
+				throw new IllegalStateException("ordering mismatch for " + a[i] + ", " + b[i]);
+		}
+	}
+
+	@Benchmark
+	public void prefixLenString(Blackhole bh) {
+		for (int i = 0; i < SIZE; i++)
+			bh.consume(stringPrefixLen(a[i], b[i]));
+	}
+
+	@Benchmark
+	public void prefixLenBigInteger(Blackhole bh) {
+		for (int i = 0; i < SIZE; i++)
+			bh.consume(Util.prefixLen(a[i], b[i]));
+	}
+
+	@Benchmark
+	public void prefixLenNodeKey(Blackhole bh) {
+		for (int i = 0; i < SIZE; i++)
+			bh.consume(Util.prefixLen(ka[i], kb[i]));
+	}
+
+	@Benchmark
+	public BigInteger[] sortString() {
+		BigInteger[] copy = Arrays.copyOf(a, SIZE);
+		Arrays.sort(copy, new Comparator<BigInteger>() {
+			public int compare(BigInteger o1, BigInteger o2) {
+				return put0(o1).compareTo(put0(o2));
+			}
+		});
+		return copy;
+	}
+
+	@Benchmark
+	public NodeKey[] sortNodeKey() {
+		NodeKey[] copy = Arrays.copyOf(ka, SIZE);
+		Arrays.sort(copy);
+		return copy;
+	}
+
+	// ______________________________________________________________________________________________
+	// the implementation Util used before, kept here as the reference
+
+	static int stringPrefixLen(BigInteger b1, BigInteger b2) {
+		String s1 = put0(b1);
+		String s2 = put0(b2);
+
+		int i = 0;
+		for (i = 0; i < s1.length(); i++) {
+			if (s1.charAt(i) != s2.charAt(i))
+				return i;
+		}
+
+		return i;
+	}
+
+	static String put0(BigInteger b) {
+		String s = b.toString(2);
+		while (s.length() < KademliaCommonConfig.BITS) {
+			s = "0" + s;
+		}
+		return s;
+	}
+
+}
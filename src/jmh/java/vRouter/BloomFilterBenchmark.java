@@ -0,0 +1,131 @@
+package vRouter;
+
+import kademlia.NodeKey;
+import orestes.bloomfilter.BloomFilter;
+import orestes.bloomfilter.FilterBuilder;
+import orestes.bloomfilter.memory.BloomFilterMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the baqend BloomFilterMemory with MD5 hashing (the reference implementation) with LongBloomFilter, probing
+ * from a 64-bit mix of the key or from the key bits directly. The setup fills one filter of each kind with
+ * EXPECTED_ELEMENTS random keys and measures the false-positive rate on keys that were not inserted; the benchmark fails
+ * if a native filter is clearly less accurate than the reference one.<br>
+ * Run with: gradle jmh
+ *
+ * @author Daniele Furlan, Maurizio Bonani
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BloomFilterBenchmark {
+
+	private static final int SIZE = 1024;
+	private static final int ABSENT = 200000;
+
+	@Param({ "100", "1000" })
+	public int expectedElements;
+
+	@Param({ "0.001" })
+	public double falsePositiveProb;
+
+	private FilterBuilder config;
+	private BloomFilter<NodeKey> reference;
+	private LongBloomFilter mix;
+	private LongBloomFilter key;
+	private NodeKey[] queries;
+
+	@Setup
+	public void setup() {
+		VRouterCommonConfig.EXPECTED_ELEMENTS = expectedElements;
+		VRouterCommonConfig.FALSE_POSITIVE_PROB = falsePositiveProb;
+		config = ContactWithBloomFilter.filterConfig();
+		reference = new BloomFilterMemory<>(config);
+		mix = new LongBloomFilter(config.size(), expectedElements);
+		key = new LongBloomFilter(config.size(), expectedElements);
+
+		Random r = new Random(1234567890);
+		queries = new NodeKey[SIZE];
+		for (int i = 0; i < expectedElements; i++) {
+			NodeKey k = NodeKey.of(new BigInteger(160, r));
+			reference.add(k);
+			mix.add(positions(k, VRouterCommonConfig.HASH_MIX));
+			key.add(positions(k, VRouterCommonConfig.HASH_KEY));
+			if (i < SIZE / 2)
+				queries[i] = k;
+		}
+
+		int fpReference = 0;
+		int fpMix = 0;
+		int fpKey = 0;
+		for (int i = 0; i < ABSENT; i++) {
+			NodeKey k = NodeKey.of(new BigInteger(160, r));
+			if (reference.contains(k))
+				fpReference++;
+			if (mix.contains(positions(k, VRouterCommonConfig.HASH_MIX)))
+				fpMix++;
+			if (key.contains(positions(k, VRouterCommonConfig.HASH_KEY)))
+				fpKey++;
+			if (i < SIZE && queries[i] == null)
+				queries[i] = k;
+		}
+		for (int i = 0; i < SIZE; i++) {
+			if (queries[i] == null)
+				queries[i] = NodeKey.of(new BigInteger(160, r));
+		}
+
+		System.out.printf("%nFPR target=%f baqend=%f native(mix)=%f native(key)=%f%n", falsePositiveProb,
+				(double) fpReference / ABSENT, (double) fpMix / ABSENT, (double) fpKey / ABSENT);
+		// allow for sampling noise on top of the reference rate
+		int limit = 2 * fpReference + 50;
+		if (fpMix > limit || fpKey > limit)
+			throw new IllegalStateException("native filter less accurate than the reference: " + fpMix + ", " + fpKey
+					+ " false positives against " + fpReference);
+		VRouterCommonConfig.BLOOM_HASH = VRouterCommonConfig.HASH_MIX;
+	}
+
+	private int[] positions(NodeKey k, String hash) {
+		VRouterCommonConfig.BLOOM_HASH = hash;
+		return LongBloomFilter.positions(k, config.size(), config.hashes());
+	}
+
+	@Benchmark
+	public void containsBaqend(Blackhole bh) {
+		for (int i = 0; i < SIZE; i++)
+			bh.consume(reference.contains(queries[i]));
+	}
+
+	@Benchmark
+	public void containsNativeMix(Blackhole bh) {
+		VRouterCommonConfig.BLOOM_HASH = VRouterCommonConfig.HASH_MIX;
+		for (int i = 0; i < SIZE; i++)
+			bh.consume(mix.contains(LongBloomFilter.positions(queries[i], config.size(), config.hashes())));
+	}
+
+	@Benchmark
+	public void containsNativeKey(Blackhole bh) {
+		VRouterCommonConfig.BLOOM_HASH = VRouterCommonConfig.HASH_KEY;
+		for (int i = 0; i < SIZE; i++)
+			bh.consume(key.contains(LongBloomFilter.positions(queries[i], config.size(), config.hashes())));
+	}
+
+}
@@ -3,17 +3,20 @@ package kademlia;
 import peersim.config.Configuration;
 import peersim.core.CommonState;
 import peersim.core.Network;
+import peersim.core.Node;
+import peersim.dynamics.NodeInitializer;
 
 import java.math.BigInteger;
 
 /**
  * This control initializes the whole network (that was already created by peersim) assigning a unique NodeId, randomly generated,
- * to every node.
+ * to every node. As a node initializer it does the same for the nodes added to the network at runtime, and registers them in
+ * the NodeDirectory.
  * 
  * @author Daniele Furlan, Maurizio Bonani
  * @version 1.0
  */
-public class CustomDistribution implements peersim.core.Control {
+public class CustomDistribution implements peersim.core.Control, NodeInitializer {
 
 	private static final String PAR_PROT = "protocol";
 
@@ -33,15 +36,30 @@ public class CustomDistribution implements peersim.core.Control {
 	 */
 	public boolean execute() {
 		BigInteger tmp;
+		NodeDirectory.clear();
 		for (int i = 0; i < Network.size(); ++i) {
 			tmp = urg.generate();
 			if(tmp.equals(new BigInteger("1401212130835375394797907194136709459790834381274"))){
 				System.err.println("node num: " + i);
 			}
-			((KademliaProtocol) (Network.get(i).getProtocol(protocolID))).setNodeId(tmp);
+			KademliaProtocol kad = (KademliaProtocol) (Network.get(i).getProtocol(protocolID));
+			kad.setNodeId(tmp);
+			NodeDirectory.put(kad.nodeId, Network.get(i));
 		}
 
 		return false;
 	}
 
+	/**
+	 * assign a randomly generated NodeId to a node added at runtime and register it in the NodeDirectory
+	 * 
+	 * @param n
+	 *            Node
+	 */
+	public void initialize(Node n) {
+		KademliaProtocol kad = (KademliaProtocol) (n.getProtocol(protocolID));
+		kad.setNodeId(urg.generate());
+		NodeDirectory.put(kad.nodeId, n);
+	}
+
 }
@@ -1,43 +1,188 @@
 package kademlia;
 
-import peersim.core.CommonState;
-
-import java.math.BigInteger;
-import java.util.TreeMap;
+import peersim.core.Node;
 
 /**
- * This class implements a kademlia k-bucket. Function for the management of the neighbours update are also implemented
- * 
+ * This class implements a kademlia k-bucket. Function for the management of the neighbours update are also implemented<br>
+ * The contacts are kept in two fixed-capacity arrays (K slots) sorted by node ID, one with the keys and one with the
+ * last-seen cycles, so the iteration order is the same ascending order the former TreeMap gave.<br>
+ * Buckets are maintained as in Kademlia: a contact that is seen again is refreshed (moved to the tail of the
+ * least-recently-seen order), a new contact that finds the bucket full replaces the least-recently-seen one only if that
+ * one is dead or stale, and otherwise waits in a bounded replacement cache that refills the bucket when a contact is
+ * removed. Times are measured in cycles (KademliaCommonConfig.currentCycle()), also when the protocol is event driven.
+ *
  * @author Daniele Furlan, Maurizio Bonani
  * @version 1.0
  */
 public class KBucket implements Cloneable {
 
-	// k-bucket array
-	protected TreeMap<BigInteger, Long> neighbours = null;
+	// contacts, sorted by node ID; only the first size slots are used
+	protected final NodeKey[] keys;
+
+	// last-seen cycle of the contact in the same slot of keys
+	protected final long[] lastSeen;
+
+	// number of contacts
+	protected int size = 0;
+
+	// replacement cache, oldest first; allocated when the bucket first overflows
+	protected NodeKey[] replacements = null;
+
+	// number of contacts in the replacement cache
+	protected int replacementCount = 0;
 
 	// empty costructor
 	public KBucket() {
-		neighbours = new TreeMap<BigInteger, Long>();
+		keys = new NodeKey[KademliaCommonConfig.K];
+		lastSeen = new long[KademliaCommonConfig.K];
 	}
 
 	// add a neighbour to this k-bucket
-	public void addNeighbour(BigInteger node) {
-		long time = CommonState.getTime();
-		if (neighbours.size() < KademliaCommonConfig.K) { // k-bucket isn't full
-			neighbours.put(node, time); // add neighbour to the tail of the list
+	public void addNeighbour(NodeKey node) {
+		long time = KademliaCommonConfig.currentCycle();
+		int pos = indexOf(node);
+		if (pos >= 0) {
+			lastSeen[pos] = time; // already known, move it to the tail
+			return;
+		}
+
+		if (size == keys.length) { // k-bucket is full
+			int head = leastRecentlySeen();
+			if (!isStale(head, time)) {
+				addReplacement(node); // the head is still alive, keep it
+				return;
+			}
+			removeAt(head);
+			pos = indexOf(node);
+		}
+		insertAt(-(pos + 1), node, time);
+	}
+
+	// remove a neighbour from this k-bucket, the most recent replacement takes its place
+	public void removeNeighbour(NodeKey node) {
+		int pos = indexOf(node);
+		if (pos < 0) {
+			removeReplacement(node);
+			return;
 		}
+		removeAt(pos);
+		if (replacementCount > 0) {
+			NodeKey replacement = replacements[--replacementCount];
+			replacements[replacementCount] = null;
+			insertAt(-(indexOf(replacement) + 1), replacement, KademliaCommonConfig.currentCycle());
+		}
+	}
+
+	private void insertAt(int pos, NodeKey node, long time) {
+		System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+		System.arraycopy(lastSeen, pos, lastSeen, pos + 1, size - pos);
+		keys[pos] = node;
+		lastSeen[pos] = time;
+		size++;
+	}
+
+	private void removeAt(int pos) {
+		System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+		System.arraycopy(lastSeen, pos + 1, lastSeen, pos, size - pos - 1);
+		size--;
+		keys[size] = null;
+	}
+
+	// slot of the least recently seen contact (the head of the LRU order)
+	private int leastRecentlySeen() {
+		int head = 0;
+		for (int i = 1; i < size; i++) {
+			if (lastSeen[i] < lastSeen[head])
+				head = i;
+		}
+		return head;
+	}
+
+	// a contact can be evicted if it does not answer (left or down) or has not been seen for STALE_TIME
+	private boolean isStale(int pos, long time) {
+		Node node = NodeDirectory.get(keys[pos]);
+		if (node == null || !node.isUp())
+			return true;
+		return KademliaCommonConfig.STALE_TIME > 0 && time - lastSeen[pos] > KademliaCommonConfig.STALE_TIME;
+	}
+
+	// put a contact at the tail of the replacement cache, dropping the oldest one if it is full
+	private void addReplacement(NodeKey node) {
+		if (KademliaCommonConfig.REPLACEMENT_CACHE <= 0)
+			return;
+		if (replacements == null)
+			replacements = new NodeKey[KademliaCommonConfig.REPLACEMENT_CACHE];
+		removeReplacement(node);
+		if (replacementCount == replacements.length) {
+			System.arraycopy(replacements, 1, replacements, 0, replacementCount - 1);
+			replacementCount--;
+		}
+		replacements[replacementCount++] = node;
+	}
+
+	private void removeReplacement(NodeKey node) {
+		for (int i = 0; i < replacementCount; i++) {
+			if (replacements[i].equals(node)) {
+				System.arraycopy(replacements, i + 1, replacements, i, replacementCount - i - 1);
+				replacements[--replacementCount] = null;
+				return;
+			}
+		}
+	}
+
+	// binary search of node among the contacts: its slot, or (-(insertion point) - 1) if absent
+	private int indexOf(NodeKey node) {
+		int inf = 0;
+		int sup = size - 1;
+		while (inf <= sup) {
+			int m = (inf + sup) >>> 1;
+			int c = keys[m].compareTo(node);
+			if (c < 0)
+				inf = m + 1;
+			else if (c > 0)
+				sup = m - 1;
+			else
+				return m;
+		}
+		return -(inf + 1);
+	}
+
+	// number of contacts in this k-bucket
+	public int size() {
+		return size;
+	}
+
+	// i-th contact, in ascending node ID order
+	public NodeKey get(int i) {
+		return keys[i];
+	}
+
+	// last-seen cycle of the i-th contact
+	public long getLastSeen(int i) {
+		return lastSeen[i];
+	}
+
+	// number of contacts waiting in the replacement cache
+	public int replacementCount() {
+		return replacementCount;
 	}
 
-	// remove a neighbour from this k-bucket
-	public void removeNeighbour(BigInteger node) {
-		neighbours.remove(node);
+	// estimated heap size of this k-bucket in bytes (object header and the arrays, keys are shared)
+	public long memoryBytes() {
+		long bytes = 32 + (16 + 4L * keys.length) + (16 + 8L * lastSeen.length);
+		if (replacements != null)
+			bytes += 16 + 4L * replacements.length;
+		return bytes;
 	}
 
 	public Object clone() {
 		kademlia.KBucket dolly = new kademlia.KBucket();
-		for (BigInteger node : neighbours.keySet()) {
-			dolly.neighbours.put(new BigInteger(node.toByteArray()), 0l);
+		System.arraycopy(keys, 0, dolly.keys, 0, size); // keys are immutable
+		System.arraycopy(lastSeen, 0, dolly.lastSeen, 0, size);
+		dolly.size = size;
+		if (replacements != null) {
+			dolly.replacements = replacements.clone();
+			dolly.replacementCount = replacementCount;
 		}
 		return dolly;
 	}
@@ -45,8 +190,8 @@ public class KBucket implements Cloneable {
 	public String toString() {
 		String res = "{\n";
 
-		for (BigInteger node : neighbours.keySet()) {
-			res += node + "\n";
+		for (int i = 0; i < size; i++) {
+			res += keys[i] + "\n";
 		}
 
 		return res + "}";
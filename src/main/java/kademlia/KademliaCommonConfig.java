@@ -1,5 +1,7 @@
 package kademlia;
 
+import peersim.core.CommonState;
+
 /**
  * Kademlia 网络的固定参数配置类。这些参数有默认值，并且可以在网络启动时一次性配置。
  *
@@ -17,13 +19,31 @@ public class KademliaCommonConfig {
 	// 同时进行查找的数量（默认是 3）
 	public static int ALPHA = 3;
 
+	// 每个 k-bucket 的替换缓存大小（默认是 5，0 表示不缓存）
+	public static int REPLACEMENT_CACHE = 5;
+
+	// k-bucket 满时，超过多少个周期未联系的头部节点可被替换（默认是 0，表示只替换失效节点）
+	public static int STALE_TIME = 0;
+
+	// 一个周期的模拟时间长度（默认是 1，周期驱动时的值），事件驱动的协议设为 nextCycle 的调度间隔
+	public static long CYCLE_LENGTH = 1;
+
+	/**
+	 * 当前周期，k-bucket 的最近联系时间以周期计
+	 *
+	 * @return 模拟时间除以 CYCLE_LENGTH
+	 */
+	public static long currentCycle() {
+		return CommonState.getTime() / CYCLE_LENGTH;
+	}
+
 	/**
 	 * 返回当前 Kademlia 配置的简要信息
 	 *
-	 * @return 返回一个包含 K、ALPHA 和 BITS 配置的字符串
+	 * @return 返回一个包含 K、ALPHA、BITS 及 k-bucket 维护参数的字符串
 	 */
 	public static String info() {
-		return String.format("[K=%d][ALPHA=%d][BITS=%d]", K, ALPHA, BITS);
+		return String.format("[K=%d][ALPHA=%d][BITS=%d][REPLACEMENT_CACHE=%d][STALE_TIME=%d]", K, ALPHA, BITS, REPLACEMENT_CACHE, STALE_TIME);
 	}
 
 }
@@ -10,7 +10,6 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.math.BigInteger;
 import java.util.HashMap;
 
 /**
@@ -36,7 +35,7 @@ public class KademliaObserver implements Control {
 	 */
 	public static IncrementalStats msg_deliv = new IncrementalStats();
 
-	public static HashMap<BigInteger,Integer> searchTraffic = new HashMap<>();
+	public static HashMap<NodeKey,Integer> searchTraffic = new HashMap<>();
 
 	/** Parameter of the protocol we want to observe */
 	private static final String PAR_PROT = "protocol";
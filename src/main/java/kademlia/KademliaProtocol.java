@@ -11,7 +11,7 @@ package kademlia;
 
 import peersim.cdsim.CDProtocol;
 import peersim.config.Configuration;
-import peersim.core.Network;
+import peersim.config.IllegalParameterException;
 import peersim.core.Node;
 import vRouter.VRouterObserver;
 
@@ -27,13 +27,15 @@ public class KademliaProtocol implements Cloneable, CDProtocol {
 	final String PAR_K = "K";
 	final String PAR_ALPHA = "ALPHA";
 	final String PAR_BITS = "BITS";
+	final String PAR_REPLACEMENT_CACHE = "REPLACEMENT_CACHE";
+	final String PAR_STALE_TIME = "STALE_TIME";
 
 	private static String prefix = null;
 	private int kademliaid;
 
 	private Queue<LookupMessage> messageQueue;
 
-	public HashMap<BigInteger,Integer> handledQuery = new HashMap<>();
+	public HashMap<NodeKey,Integer> handledQuery = new HashMap<>();
 
 	/**
 	 * allow to call the service initializer only once
@@ -43,7 +45,7 @@ public class KademliaProtocol implements Cloneable, CDProtocol {
 	/**
 	 * nodeId of this pastry node
 	 */
-	public BigInteger nodeId;
+	public NodeKey nodeId;
 
 	/**
 	 * routing table of this pastry node
@@ -89,49 +91,24 @@ public class KademliaProtocol implements Cloneable, CDProtocol {
 		KademliaCommonConfig.K = Configuration.getInt(prefix + "." + PAR_K, KademliaCommonConfig.K);
 		KademliaCommonConfig.ALPHA = Configuration.getInt(prefix + "." + PAR_ALPHA, KademliaCommonConfig.ALPHA);
 		KademliaCommonConfig.BITS = Configuration.getInt(prefix + "." + PAR_BITS, KademliaCommonConfig.BITS);
+		if (KademliaCommonConfig.BITS < 1 || KademliaCommonConfig.BITS > NodeKey.WIDTH)
+			throw new IllegalParameterException(prefix + "." + PAR_BITS, "must be between 1 and " + NodeKey.WIDTH);
+		KademliaCommonConfig.REPLACEMENT_CACHE = Configuration.getInt(prefix + "." + PAR_REPLACEMENT_CACHE, KademliaCommonConfig.REPLACEMENT_CACHE);
+		KademliaCommonConfig.STALE_TIME = Configuration.getInt(prefix + "." + PAR_STALE_TIME, KademliaCommonConfig.STALE_TIME);
 
 		_ALREADY_INSTALLED = true;
 	}
 
 	/**
-	 * Search through the network the Node having a specific node Id, by performing binary serach (we concern about the ordering
-	 * of the network).
+	 * Search the Node having a specific node Id through the NodeDirectory (a single hash lookup, we don't concern about the
+	 * ordering of the network).
 	 * 
 	 * @param searchNodeId
-	 *            BigInteger
+	 *            NodeKey
 	 * @return Node
 	 */
-	private Node nodeIdtoNode(BigInteger searchNodeId) {
-		if (searchNodeId == null)
-			return null;
-
-		int inf = 0;
-		int sup = Network.size() - 1;
-		int m;
-
-		while (inf <= sup) {
-			m = (inf + sup) / 2;
-
-			BigInteger mId = ((kademlia.KademliaProtocol) Network.get(m).getProtocol(kademliaid)).nodeId;
-
-			if (mId.equals(searchNodeId))
-				return Network.get(m);
-
-			if (mId.compareTo(searchNodeId) < 0)
-				inf = m + 1;
-			else
-				sup = m - 1;
-		}
-
-		// perform a traditional search for more reliability (maybe the network is not ordered)
-		BigInteger mId;
-		for (int i = Network.size() - 1; i >= 0; i--) {
-			mId = ((kademlia.KademliaProtocol) Network.get(i).getProtocol(kademliaid)).nodeId;
-			if (mId.equals(searchNodeId))
-				return Network.get(i);
-		}
-
-		return null;
+	private Node nodeIdtoNode(NodeKey searchNodeId) {
+		return NodeDirectory.get(searchNodeId);
 	}
 
 	/**
@@ -141,8 +118,8 @@ public class KademliaProtocol implements Cloneable, CDProtocol {
 	 *            BigInteger
 	 */
 	public void setNodeId(BigInteger tmp) {
-		this.nodeId = tmp;
-		this.routingTable.nodeId = tmp;
+		this.nodeId = NodeKey.of(tmp);
+		this.routingTable.nodeId = this.nodeId;
 	}
 
 	@Override
@@ -161,13 +138,9 @@ public class KademliaProtocol implements Cloneable, CDProtocol {
 				KademliaObserver.searchTraffic.put(msg.target,msgs);
 			}
 			routingTable.addNeighbour(msg.from);
-			BigInteger[] neighbors = getCloserNodes(msg.target);
-			int targetFlag = 0;
-			for(int i=0;i<neighbors.length;i++){
-				//target is farther than local; stop
-				if(Util.distance(neighbors[i],msg.target).compareTo(Util.distance(this.nodeId,msg.target)) >=0 ) break;
-				targetFlag++;
-			}
+			NodeKey[] neighbors = getCloserNodes(msg.target);
+			// only nodes closer to the target than local are returned
+			int targetFlag = neighbors.length;
 
 			//send message to closer node
 			for(int i=0;i<targetFlag;i++){
@@ -184,22 +157,9 @@ public class KademliaProtocol implements Cloneable, CDProtocol {
 		}
 	}
 
-	public BigInteger[] getCloserNodes(BigInteger targetID){
-		BigInteger[] neighbors = routingTable.getNeighbours(targetID);
-
-		int targetFlag = 0;
-		for(int i=0;i<neighbors.length;i++){
-			//target is farther than local; stop
-			if(Util.distance(neighbors[i],targetID).compareTo(Util.distance(this.nodeId,targetID)) >=0 ) break;
-			targetFlag++;
-		}
-
-		BigInteger[] closerNodes = new BigInteger[Math.min(targetFlag, KademliaCommonConfig.ALPHA)];
-		//copy neighbours
-		for(int i=0;i<Math.min(targetFlag, KademliaCommonConfig.ALPHA);i++){
-			closerNodes[i] = neighbors[i];
-		}
-		return closerNodes;
+	public NodeKey[] getCloserNodes(NodeKey targetID){
+		// the routing table only returns neighbours closer than this node
+		return routingTable.getNeighbours(targetID);
 	}
 
 	public void sendMessage(LookupMessage target){
@@ -1,18 +1,16 @@
 package kademlia;
 
-import java.math.BigInteger;
-
 public class LookupMessage{
-    BigInteger target;
-    BigInteger from;
+    NodeKey target;
+    NodeKey from;
     public int hops;
-    public LookupMessage(BigInteger t,BigInteger f){
+    public LookupMessage(NodeKey t,NodeKey f){
         target = t;
         from = f;
         hops = 1;
     }
 
-    public LookupMessage nextHop(BigInteger f){
+    public LookupMessage nextHop(NodeKey f){
         LookupMessage msg = new LookupMessage(this.target,f);
         msg.hops = this.hops +1;
         return msg;
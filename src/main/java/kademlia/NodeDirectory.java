@@ -0,0 +1,105 @@
+package kademlia;
+
+import peersim.core.Fallible;
+import peersim.core.Node;
+
+import java.util.HashMap;
+
+/**
+ * Directory from node key to the simulated Node, shared by all the protocol instances.<br>
+ * Next-hop resolution is a single hash lookup and does not depend on the ordering of the Network array, so it keeps working
+ * after churn or after the network is re-sorted. Nodes are registered when their ID is assigned, both by the initial
+ * ID distribution and by the node initializers of nodes added at runtime; vRouter nodes (MyNode) deregister themselves
+ * when they are removed from the Network (DEAD), and any other removed node is simply not returned by get.<br>
+ * The directory is only modified by initializers and controls; lookups never modify it, so the protocol instances of
+ * vRouter.CycleEngine can resolve next hops from several threads at once.
+ *
+ * @author Daniele Furlan, Maurizio Bonani
+ * @version 1.0
+ */
+public class NodeDirectory {
+
+	private static final HashMap<NodeKey, Node> nodes = new HashMap<NodeKey, Node>();
+
+	// ______________________________________________________________________________________________
+	/**
+	 * register a node under its key, replacing the previous node with the same key if any
+	 *
+	 * @param key
+	 *            NodeKey
+	 * @param node
+	 *            Node
+	 */
+	public static void put(NodeKey key, Node node) {
+		nodes.put(key, node);
+	}
+
+	/**
+	 * remove the node registered under the given key
+	 *
+	 * @param key
+	 *            NodeKey
+	 */
+	public static void remove(NodeKey key) {
+		nodes.remove(key);
+	}
+
+	/**
+	 * remove the given node, only if it is still the one registered under the given key
+	 *
+	 * @param key
+	 *            NodeKey
+	 * @param node
+	 *            Node
+	 */
+	public static void remove(NodeKey key, Node node) {
+		nodes.remove(key, node);
+	}
+
+	/**
+	 * forget every registered node (called when a new experiment initializes the network)
+	 */
+	public static void clear() {
+		nodes.clear();
+	}
+
+	/**
+	 * return the node registered with the given key, or null if there is none or it has been removed from the network
+	 *
+	 * @param key
+	 *            NodeKey
+	 * @return Node
+	 */
+	public static Node get(NodeKey key) {
+		if (key == null)
+			return null;
+		Node node = nodes.get(key);
+		if (node != null && node.getFailState() == Fallible.DEAD)
+			return null;
+		return node;
+	}
+
+	/**
+	 * return the protocol instance with the given id of the node registered with the given key, or null
+	 *
+	 * @param key
+	 *            NodeKey
+	 * @param pid
+	 *            int
+	 * @return the protocol instance
+	 */
+	public static Object getProtocol(NodeKey key, int pid) {
+		Node node = get(key);
+		return node == null ? null : node.getProtocol(pid);
+	}
+
+	/**
+	 * number of registered nodes
+	 *
+	 * @return int
+	 */
+	public static int size() {
+		return nodes.size();
+	}
+
+}
@@ -0,0 +1,244 @@
+package kademlia;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable fixed-width 160-bit identifier used for node IDs and data IDs on the routing path.<br>
+ * The value is stored as two longs and one int (most significant word first), so XOR distances can be compared and
+ * common prefixes measured without allocating intermediate BigInteger objects. BigInteger is only used to build a key
+ * from the configuration/random generators and to print it.
+ *
+ * @author Daniele Furlan, Maurizio Bonani
+ * @version 1.0
+ */
+public final class NodeKey implements Comparable<NodeKey> {
+
+	/**
+	 * number of bits a key can hold
+	 */
+	public static final int WIDTH = 160;
+
+	/**
+	 * number of bytes of the binary representation
+	 */
+	public static final int BYTES = WIDTH / 8;
+
+	public static final NodeKey ZERO = new NodeKey(0L, 0L, 0);
+
+	// bits 159..96
+	final long hi;
+	// bits 95..32
+	final long mid;
+	// bits 31..0
+	final int lo;
+
+	NodeKey(long hi, long mid, int lo) {
+		this.hi = hi;
+		this.mid = mid;
+		this.lo = lo;
+	}
+
+	// ______________________________________________________________________________________________
+	/**
+	 * build a key from a non negative BigInteger of at most WIDTH bits
+	 *
+	 * @param b
+	 *            BigInteger
+	 * @return NodeKey
+	 */
+	public static NodeKey of(BigInteger b) {
+		if (b == null)
+			return null;
+		if (b.signum() < 0 || b.bitLength() > WIDTH)
+			throw new IllegalArgumentException("key out of range: " + b);
+		return new NodeKey(b.shiftRight(96).longValue(), b.shiftRight(32).longValue(), b.intValue());
+	}
+
+	/**
+	 * convert this key back to a BigInteger (output boundary only)
+	 *
+	 * @return BigInteger
+	 */
+	public BigInteger toBigInteger() {
+		byte[] mag = new byte[20];
+		putLong(mag, 0, hi);
+		putLong(mag, 8, mid);
+		mag[16] = (byte) (lo >>> 24);
+		mag[17] = (byte) (lo >>> 16);
+		mag[18] = (byte) (lo >>> 8);
+		mag[19] = (byte) lo;
+		return new BigInteger(1, mag);
+	}
+
+	private static void putLong(byte[] b, int off, long v) {
+		for (int i = 7; i >= 0; i--) {
+			b[off + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	// ______________________________________________________________________________________________
+	/**
+	 * return the distance between this key and another one, defined as (a XOR b)
+	 *
+	 * @param o
+	 *            NodeKey
+	 * @return NodeKey
+	 */
+	public NodeKey xor(NodeKey o) {
+		return new NodeKey(hi ^ o.hi, mid ^ o.mid, lo ^ o.lo);
+	}
+
+	/**
+	 * compare the XOR distances of a and b from target without building them, i.e. the sign of
+	 * (a XOR target).compareTo(b XOR target)
+	 *
+	 * @param a
+	 *            NodeKey
+	 * @param b
+	 *            NodeKey
+	 * @param target
+	 *            NodeKey
+	 * @return int
+	 */
+	public static int compareDistance(NodeKey a, NodeKey b, NodeKey target) {
+		if (a.hi != b.hi)
+			return Long.compareUnsigned(a.hi ^ target.hi, b.hi ^ target.hi);
+		if (a.mid != b.mid)
+			return Long.compareUnsigned(a.mid ^ target.mid, b.mid ^ target.mid);
+		return Integer.compareUnsigned(a.lo ^ target.lo, b.lo ^ target.lo);
+	}
+
+	/**
+	 * number of leading bits (out of WIDTH) that this key and another one have in common
+	 *
+	 * @param o
+	 *            NodeKey
+	 * @return int
+	 */
+	public int commonPrefix(NodeKey o) {
+		long x = hi ^ o.hi;
+		if (x != 0)
+			return Long.numberOfLeadingZeros(x);
+		x = mid ^ o.mid;
+		if (x != 0)
+			return 64 + Long.numberOfLeadingZeros(x);
+		return 128 + Integer.numberOfLeadingZeros(lo ^ o.lo);
+	}
+
+	/**
+	 * number of significant bits of this key, as BigInteger.bitLength()
+	 *
+	 * @return int
+	 */
+	public int bitLength() {
+		return WIDTH - commonPrefix(ZERO);
+	}
+
+	// ______________________________________________________________________________________________
+	/**
+	 * unsigned numeric ordering, the same as the one of the equivalent BigIntegers
+	 */
+	public int compareTo(NodeKey o) {
+		if (hi != o.hi)
+			return Long.compareUnsigned(hi, o.hi);
+		if (mid != o.mid)
+			return Long.compareUnsigned(mid, o.mid);
+		return Integer.compareUnsigned(lo, o.lo);
+	}
+
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof NodeKey))
+			return false;
+		NodeKey k = (NodeKey) o;
+		return hi == k.hi && mid == k.mid && lo == k.lo;
+	}
+
+	/**
+	 * same value as BigInteger.hashCode() of the equivalent number, so hash based collections keep the iteration order
+	 * they had with BigInteger keys
+	 */
+	public int hashCode() {
+		int h = (int) (hi >>> 32);
+		h = 31 * h + (int) hi;
+		h = 31 * h + (int) (mid >>> 32);
+		h = 31 * h + (int) mid;
+		h = 31 * h + lo;
+		return h;
+	}
+
+	/**
+	 * the 64 least significant bits of the key (bits 63..0)
+	 *
+	 * @return long
+	 */
+	public long low64() {
+		return (mid << 32) | (lo & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * the 64 bits above low64 (bits 127..64)
+	 *
+	 * @return long
+	 */
+	public long high64() {
+		return (hi << 32) | (mid >>> 32);
+	}
+
+	/**
+	 * 64-bit hash of all the bits of the key (murmur3 finalizer applied word by word), for filters that need more hash
+	 * bits than hashCode gives
+	 *
+	 * @param seed
+	 *            long
+	 * @return long
+	 */
+	public long hash64(long seed) {
+		return fmix64(hi ^ fmix64(mid ^ fmix64((lo & 0xFFFFFFFFL) ^ seed)));
+	}
+
+	private static long fmix64(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * write the key as BYTES big-endian bytes (the same bytes as the magnitude of toBigInteger())
+	 *
+	 * @param buf
+	 *            ByteBuffer
+	 */
+	public void writeTo(ByteBuffer buf) {
+		buf.putLong(hi);
+		buf.putLong(mid);
+		buf.putInt(lo);
+	}
+
+	/**
+	 * read a key written by writeTo
+	 *
+	 * @param buf
+	 *            ByteBuffer
+	 * @return NodeKey
+	 */
+	public static NodeKey readFrom(ByteBuffer buf) {
+		long hi = buf.getLong();
+		long mid = buf.getLong();
+		return new NodeKey(hi, mid, buf.getInt());
+	}
+
+	/**
+	 * decimal representation, the same as BigInteger.toString()
+	 */
+	public String toString() {
+		return toBigInteger().toString();
+	}
+
+}
@@ -1,11 +1,11 @@
 package kademlia;
 
-import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.TreeMap;
+import peersim.core.Node;
 
 /**
- * Gives an implementation for the rounting table component of a kademlia node
+ * Gives an implementation for the rounting table component of a kademlia node<br>
+ * The k-buckets are kept in a sparse array indexed by prefix length: a slot stays null until the first contact with that
+ * prefix length is added, since most of the BITS+1 buckets of a node never receive any contact.
  * 
  * @author Daniele Furlan, Maurizio Bonani
  * @version 1.0
@@ -13,95 +13,175 @@ import java.util.TreeMap;
 public class RoutingTable implements Cloneable {
 
 	// node ID of the node
-	public BigInteger nodeId = null;
+	public NodeKey nodeId = null;
 
-	// k-buckets
-	public TreeMap<Integer, KBucket> k_buckets = null;
+	// k-buckets, indexed by prefix length and allocated on first insert
+	public KBucket[] k_buckets = null;
+
+	// scratch buffer of selectNeighbours
+	private NodeKey[] selected = null;
 
 	// ______________________________________________________________________________________________
 	/**
 	 * instanciates a new empty routing table with the specified size
 	 */
 	public RoutingTable() {
-		k_buckets = new TreeMap<Integer, KBucket>();
-		// initialize k-bukets
-		for (int i = 0; i <= KademliaCommonConfig.BITS; i++) {
-			k_buckets.put(i, new KBucket());
-		}
+		k_buckets = new KBucket[KademliaCommonConfig.BITS + 1];
 	}
 
 	// add a neighbour to the correct k-bucket
-	public void addNeighbour(BigInteger node) {
+	public void addNeighbour(NodeKey node) {
 		// get the lenght of the longest common prefix (correspond to the correct k-bucket)
 		int prefix_len = Util.prefixLen(nodeId, node);
 
-		// add the node to the k-bucket
-		k_buckets.get(prefix_len).addNeighbour(node);
+		// add the node to the k-bucket, creating it if this is its first contact
+		KBucket bucket = k_buckets[prefix_len];
+		if (bucket == null) {
+			bucket = new KBucket();
+			k_buckets[prefix_len] = bucket;
+		}
+		bucket.addNeighbour(node);
 	}
 
 	// remove a neighbour from the correct k-bucket
-	public void removeNeighbour(BigInteger node) {
+	public void removeNeighbour(NodeKey node) {
 		// get the lenght of the longest common prefix (correspond to the correct k-bucket)
 		int prefix_len = Util.prefixLen(nodeId, node);
 
-		// add the node to the k-bucket
-		k_buckets.get(prefix_len).removeNeighbour(node);
+		// remove the node from the k-bucket
+		KBucket bucket = k_buckets[prefix_len];
+		if (bucket != null)
+			bucket.removeNeighbour(node);
 	}
 
-	// return the closest neighbour to a key from the correct k-bucket
-	public BigInteger[] getNeighbours(final BigInteger key) {
-		// resulting neighbours
-		BigInteger[] result = new BigInteger[KademliaCommonConfig.ALPHA];
-
-		// neighbour candidates
-		ArrayList<BigInteger> neighbour_candidates = new ArrayList<BigInteger>();
+	/**
+	 * Select the neighbours that are strictly closer to key than this node, at most ALPHA of them, sorted by increasing
+	 * distance. They are left in a scratch buffer owned by this table (read them with selected(i)) that is overwritten by
+	 * the next call, so no object is allocated.<br>
+	 * Only the k-bucket sharing the key's prefix can hold closer nodes: every other bucket differs from the key before this
+	 * node does. As before, a bucket holding fewer than ALPHA contacts gives no candidate.
+	 * 
+	 * @param key
+	 *            NodeKey
+	 * @return number of selected neighbours
+	 */
+	public int selectNeighbours(final NodeKey key) {
+		int alpha = KademliaCommonConfig.ALPHA;
+		if (selected == null || selected.length != alpha)
+			selected = new NodeKey[alpha];
 
-		// get the lenght of the longest common prefix
+		// get the lenght of the longest common prefix (correspond to the k-bucket of the key)
 		int prefix_len = Util.prefixLen(nodeId, key);
 
-		// return the k-bucket if is more than alpha
-		if (k_buckets.get(prefix_len).neighbours.size() >= KademliaCommonConfig.ALPHA) {
-			neighbour_candidates.addAll(k_buckets.get(prefix_len).neighbours.keySet());
+		KBucket bucket = k_buckets[prefix_len];
+		if (bucket == null || bucket.size < alpha)
+			return 0;
+
+		// bounded insertion sort: keep the alpha closest candidates seen so far
+		int n = 0;
+		for (int b = 0; b < bucket.size; b++) {
+			NodeKey node = bucket.keys[b];
+			// farther than (or as far as) this node
+			if (Util.compareDistance(node, nodeId, key) >= 0)
+				continue;
+			// full and not closer than the current last one
+			if (n == alpha && Util.compareDistance(node, selected[n - 1], key) >= 0)
+				continue;
+
+			int j = (n < alpha) ? n++ : n - 1;
+			while (j > 0 && Util.compareDistance(node, selected[j - 1], key) < 0) {
+				selected[j] = selected[j - 1];
+				j--;
+			}
+			selected[j] = node;
 		}
-		else{
-			// else get k closest node from all k-buckets
-//			prefix_len = 0;
-//			while (prefix_len < KademliaCommonConfig.ALPHA) {
-//				neighbour_candidates.addAll(k_buckets.get(prefix_len).neighbours.keySet());
-//				// remove source id
-//				prefix_len++;
-//			}
-			while(neighbour_candidates.size()<KademliaCommonConfig.ALPHA && prefix_len > 0){
-				prefix_len --;
-				neighbour_candidates.addAll(k_buckets.get(prefix_len).neighbours.keySet());
+		return n;
+	}
+
+	/**
+	 * Same as selectNeighbours, but a selected neighbour that has left the network or is down is first removed from its
+	 * k-bucket (a contact of the replacement cache takes its place) and the selection is repeated, so only live neighbours
+	 * are returned.
+	 * 
+	 * @param key
+	 *            NodeKey
+	 * @return number of selected neighbours
+	 */
+	public int selectLiveNeighbours(final NodeKey key) {
+		while (true) {
+			int n = selectNeighbours(key);
+			boolean removed = false;
+			for (int i = 0; i < n; i++) {
+				Node node = NodeDirectory.get(selected[i]);
+				if (node == null || !node.isUp()) {
+					removeNeighbour(selected[i]);
+					removed = true;
+				}
 			}
+			if (!removed)
+				return n;
 		}
+	}
+
+	/**
+	 * return the i-th neighbour chosen by the last call of selectNeighbours or selectLiveNeighbours
+	 * 
+	 * @param i
+	 *            int
+	 * @return NodeKey
+	 */
+	public NodeKey selected(int i) {
+		return selected[i];
+	}
 
-		// create a map (distance, node), sort by distance
-		TreeMap<BigInteger, BigInteger> distance_map = new TreeMap<BigInteger, BigInteger>();
+	// return the live neighbours closer than this node to a key (at most ALPHA, sorted by distance)
+	public NodeKey[] getNeighbours(final NodeKey key) {
+		int n = selectLiveNeighbours(key);
+		NodeKey[] result = new NodeKey[n];
+		System.arraycopy(selected, 0, result, 0, n);
+		return result;
+	}
 
-		for (BigInteger node : neighbour_candidates) {
-			distance_map.put(Util.distance(node, key), node);
+	// number of k-buckets allocated so far
+	public int bucketCount() {
+		int count = 0;
+		for (KBucket bucket : k_buckets) {
+			if (bucket != null)
+				count++;
 		}
+		return count;
+	}
 
-		int i = 0;
-		for (BigInteger iii : distance_map.keySet()) {
-			if (i < KademliaCommonConfig.ALPHA) {
-				if(distance_map.get(iii) == null) continue;
-				result[i] = distance_map.get(iii);
-				i++;
-			}
+	// number of contacts in the table
+	public int size() {
+		int count = 0;
+		for (KBucket bucket : k_buckets) {
+			if (bucket != null)
+				count += bucket.size;
 		}
+		return count;
+	}
 
-		return result;
+	/**
+	 * estimated heap size of the table in bytes: the table object, the bucket slots, the allocated buckets and the
+	 * selection buffer (node keys are shared with the rest of the simulation and not counted)
+	 * 
+	 * @return long
+	 */
+	public long memoryBytes() {
+		long bytes = 24 + (16 + 4L * k_buckets.length);
+		for (KBucket bucket : k_buckets) {
+			if (bucket != null)
+				bytes += bucket.memoryBytes();
+		}
+		if (selected != null)
+			bytes += 16 + 4L * selected.length;
+		return bytes;
 	}
 
 	// ______________________________________________________________________________________________
 	public Object clone() {
 		kademlia.RoutingTable dolly = new kademlia.RoutingTable();
-		for (int i = 0; i < KademliaCommonConfig.BITS; i++) {
-			k_buckets.put(i, new KBucket());// (KBucket) k_buckets.get(i).clone());
-		}
 		return dolly;
 	}
 
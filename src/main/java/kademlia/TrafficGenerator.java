@@ -6,8 +6,6 @@ import peersim.core.Control;
 import peersim.core.Network;
 import peersim.core.Node;
 
-import java.math.BigInteger;
-
 /**
  * This control generates random search traffic from nodes to random destination node.
  * 
@@ -50,9 +48,9 @@ public class TrafficGenerator implements Control {
 
 		KademliaProtocol p = (KademliaProtocol)start.getProtocol(pid);
 
-		BigInteger target = urg.generate();
+		NodeKey target = NodeKey.of(urg.generate());
 		while(KademliaObserver.searchTraffic.containsKey(target)){
-			target = urg.generate();
+			target = NodeKey.of(urg.generate());
 		}
 		KademliaObserver.searchTraffic.put(target,0);
 		LookupMessage msg = new LookupMessage(target,p.nodeId);
@@ -21,17 +21,23 @@ public class Util {
 	 * @return int
 	 */
 	public static final int prefixLen(BigInteger b1, BigInteger b2) {
+		// the first differing bit is the highest set bit of (b1 XOR b2); in the BITS-long representation it is
+		// preceded by BITS - bitLength(b1 XOR b2) equal digits
+		int len = KademliaCommonConfig.BITS - b1.xor(b2).bitLength();
+		return len < 0 ? 0 : len;
+	}
 
-		String s1 = kademlia.Util.put0(b1);
-		String s2 = kademlia.Util.put0(b2);
-
-		int i = 0;
-		for (i = 0; i < s1.length(); i++) {
-			if (s1.charAt(i) != s2.charAt(i))
-				return i;
-		}
-
-		return i;
+	/**
+	 * Given two keys, returns the length of the common prefix in the canonical BITS-long representation of a nodeid
+	 * 
+	 * @param k1
+	 *            NodeKey
+	 * @param k2
+	 *            NodeKey
+	 * @return int
+	 */
+	public static final int prefixLen(NodeKey k1, NodeKey k2) {
+		return k1.commonPrefix(k2) - (NodeKey.WIDTH - KademliaCommonConfig.BITS);
 	}
 
 	/**
@@ -47,6 +53,34 @@ public class Util {
 		return a.xor(b);
 	}
 
+	/**
+	 * return the distance between two keys wich is defined as (a XOR b)
+	 * 
+	 * @param a
+	 *            NodeKey
+	 * @param b
+	 *            NodeKey
+	 * @return NodeKey
+	 */
+	public static final NodeKey distance(NodeKey a, NodeKey b) {
+		return a.xor(b);
+	}
+
+	/**
+	 * compare distance(a, target) with distance(b, target) without allocating the distances
+	 * 
+	 * @param a
+	 *            NodeKey
+	 * @param b
+	 *            NodeKey
+	 * @param target
+	 *            NodeKey
+	 * @return negative, zero or positive as a is closer, as close or farther than b
+	 */
+	public static final int compareDistance(NodeKey a, NodeKey b, NodeKey target) {
+		return NodeKey.compareDistance(a, b, target);
+	}
+
 	/**
 	 * convert a BigInteger into a String (base 2) and lead all needed non-significative zeroes in order to reach the canonical
 	 * length of a nodeid
@@ -59,10 +93,13 @@ public class Util {
 		if (b == null)
 			return null;
 		String s = b.toString(2); // base 2
-		while (s.length() < KademliaCommonConfig.BITS) {
-			s = "0" + s;
-		}
-		return s;
+		int pad = KademliaCommonConfig.BITS - s.length();
+		if (pad <= 0)
+			return s;
+		StringBuilder sb = new StringBuilder(KademliaCommonConfig.BITS);
+		for (int i = 0; i < pad; i++)
+			sb.append('0');
+		return sb.append(s).toString();
 	}
 
 }
@@ -0,0 +1,66 @@
+package vRouter;
+
+/**
+ * 近似成员查询过滤器，ContactWithBloomFilter 用它记录经由一个联系人可以找到的数据ID。
+ * 数据ID先由 ContactWithBloomFilter.probe 转换为与实现相关的探测值（布隆过滤器为 k 个位位置，布谷鸟过滤器为两个桶号和指纹，
+ * xor 过滤器为 64 位哈希），一个数据ID的探测值只计算一次，在所有联系人的所有同类过滤器中复用。
+ * 实现由 VRouterCommonConfig.BLOOM_FILTER 选择：baqend、native、blocked（布隆过滤器）、counting（计数布隆过滤器）、cuckoo 或 xor，
+ * 其中 counting 和 cuckoo 可以删除数据ID。
+ */
+public interface ApproximateMembership {
+
+    /**
+     * 数据ID是否可能在过滤器中（不会漏报，可能误报）
+     *
+     * @param probe 数据ID的探测值
+     * @return 可能包含时返回 true
+     */
+    boolean contains(int[] probe);
+
+    /**
+     * 加入一个数据ID
+     *
+     * @param probe 数据ID的探测值
+     * @return 过滤器已满（达到预期元素数或无法再放入）时返回 false，此时数据ID没有加入
+     */
+    boolean add(int[] probe);
+
+    /**
+     * 删除一个已加入的数据ID，不支持删除的过滤器总是返回 false
+     *
+     * @param probe 数据ID的探测值
+     * @return 删除时返回 true
+     */
+    default boolean remove(int[] probe) {
+        return false;
+    }
+
+    /**
+     * 过滤器是否仍以精确集合保存数据ID（例如尚未构造的 xor 过滤器）：此时没有误报，占用的位数也不是过滤器本身的大小
+     *
+     * @return 仍为精确集合时返回 true
+     */
+    default boolean isExact() {
+        return false;
+    }
+
+    /**
+     * 不再加入数据ID（例如过滤器分代时一代结束），尚未构造的静态过滤器此时由已加入的数据ID构造
+     */
+    default void seal() {
+    }
+
+    /**
+     * 已加入的数据ID个数
+     *
+     * @return int
+     */
+    int count();
+
+    /**
+     * 过滤器占用的位数
+     *
+     * @return long
+     */
+    long bits();
+}
@@ -0,0 +1,62 @@
+package vRouter;
+
+import kademlia.NodeKey;
+import orestes.bloomfilter.BloomFilter;
+import orestes.bloomfilter.FilterBuilder;
+import orestes.bloomfilter.memory.BloomFilterMemory;
+
+import java.util.BitSet;
+
+/**
+ * baqend 的 BloomFilterMemory（MD5 哈希），作为其它过滤器准确性对比的参照实现。
+ * 探测位置与 BloomFilter.add/contains 使用的位置相同，但只计算一次，之后直接读写过滤器的 BitSet。
+ */
+public class BaqendBloomFilter implements ApproximateMembership {
+
+    // 参照实现的过滤器
+    final BloomFilter<NodeKey> filter;
+
+    private int count = 0;
+
+    public BaqendBloomFilter(FilterBuilder config) {
+        filter = new BloomFilterMemory<>(config);
+    }
+
+    public boolean contains(int[] positions) {
+        BitSet bits = filter.getBitSet();
+        for (int p : positions) {
+            if (!bits.get(p)) return false;
+        }
+        return true;
+    }
+
+    public boolean add(int[] positions) {
+        if (count >= filter.getExpectedElements()) return false;
+        BitSet bits = filter.getBitSet();
+        for (int p : positions) {
+            bits.set(p);
+        }
+        count++;
+        return true;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long bits() {
+        return filter.getSize();
+    }
+
+    /**
+     * 计算数据ID的 k 个探测位置，与 BloomFilter 的 add/contains 使用的位置相同
+     *
+     * @param config 过滤器配置
+     * @param dataID 数据ID
+     * @return 探测位置
+     */
+    public static int[] positions(FilterBuilder config, NodeKey dataID) {
+        byte[] bytes = dataID.toString().getBytes(FilterBuilder.defaultCharset());
+        return config.hashFunction().hash(bytes, config.size(), config.hashes());
+    }
+}
@@ -0,0 +1,103 @@
+package vRouter;
+
+import kademlia.NodeKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 反向路由表的位切片（bit-sliced）签名索引。
+ * 每个布隆过滤器占一列，按位位置组织：第 p 行的第 g 个 long 保存第 g 组 64 个过滤器在位 p 上的取值。
+ * 查询时只取数据ID的 k 个探测位置对应的行，逐个 long 做与运算，结果中为 1 的列即为可能包含该数据ID的过滤器，
+ * 一次遍历即可得到所有匹配的联系人，匹配集合与逐个过滤器调用 contains 的线性扫描完全相同。
+ * 所有过滤器使用同一配置（位数、哈希函数个数和哈希方法），因此探测位置对每个过滤器都相同。
+ */
+public class BitSlicedIndex {
+
+    // 过滤器位数（行数）
+    private final int size;
+
+    // 位切片，slices[p][g] 为第 g 组过滤器在位 p 上的取值
+    private long[][] slices;
+
+    // 每一列（过滤器）所属的联系人
+    private ContactWithBloomFilter[] owners;
+
+    // 已分配的列数
+    private int columns = 0;
+
+    // 查询序号，用于对同一联系人的多个过滤器去重
+    private int stamp = 0;
+
+    public BitSlicedIndex(int size) {
+        this.size = size;
+        this.slices = new long[size][1];
+        this.owners = new ContactWithBloomFilter[64];
+    }
+
+    /**
+     * 为联系人的一个新布隆过滤器分配一列，容量不足时所有行的长度加倍。
+     *
+     * @param owner 过滤器所属的联系人
+     * @return 新分配的列号
+     */
+    public int addColumn(ContactWithBloomFilter owner) {
+        if (columns == owners.length) {
+            int words = slices[0].length * 2;
+            for (int p = 0; p < size; p++) {
+                long[] row = new long[words];
+                System.arraycopy(slices[p], 0, row, 0, slices[p].length);
+                slices[p] = row;
+            }
+            ContactWithBloomFilter[] grown = new ContactWithBloomFilter[words * 64];
+            System.arraycopy(owners, 0, grown, 0, columns);
+            owners = grown;
+        }
+        owners[columns] = owner;
+        return columns++;
+    }
+
+    /**
+     * 在某一列中置位，与向对应过滤器添加数据ID同步调用。
+     *
+     * @param column    列号
+     * @param positions 数据ID的探测位置
+     */
+    public void set(int column, int[] positions) {
+        int word = column >>> 6;
+        long bit = 1L << (column & 63);
+        for (int p : positions) {
+            slices[p][word] |= bit;
+        }
+    }
+
+    /**
+     * 查找可能包含数据ID的所有联系人，按联系人第一个过滤器的列号排序。
+     *
+     * @param positions 数据ID的探测位置
+     * @return 匹配的联系人ID列表
+     */
+    public List<NodeKey> match(int[] positions) {
+        List<NodeKey> matchNodes = new ArrayList<>();
+        int words = (columns + 63) >>> 6;
+        stamp++;
+
+        for (int g = 0; g < words; g++) {
+            // k 个探测位置所在行的与运算
+            long w = -1L;
+            for (int i = 0; i < positions.length && w != 0; i++) {
+                w &= slices[positions[i]][g];
+            }
+            // 逐个取出为 1 的列
+            while (w != 0) {
+                ContactWithBloomFilter owner = owners[(g << 6) | Long.numberOfTrailingZeros(w)];
+                w &= w - 1;
+                if (owner.matchStamp != stamp) {
+                    owner.matchStamp = stamp;
+                    matchNodes.add(owner.contact);
+                }
+            }
+        }
+        return matchNodes;
+    }
+}
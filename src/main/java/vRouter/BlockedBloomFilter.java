@@ -0,0 +1,119 @@
+package vRouter;
+
+import kademlia.NodeKey;
+
+/**
+ * 分块（cache-line blocked）布隆过滤器：位数组被划分为 BLOCK_BITS 位的块（默认 512 位，即 64 字节的缓存行），
+ * 一个数据ID的 k 个探测位置全部落在由第一个哈希值选出的同一个块内，块内位置由第二个哈希值按增强双重哈希得到，
+ * 因此每次 contain 最多访问一个块，而经典布隆过滤器的 k 个探测位置分散在整个位数组中。
+ * 代价是各块的负载不均匀，同样的位数下假阳性率更高；falsePositiveRate 计算考虑了这一点，size 据此增加位数，
+ * 使过滤器在 EXPECTED_ELEMENTS 个元素时仍满足 FALSE_POSITIVE_PROB。
+ * 存储与 LongBloomFilter 相同（Java 数组不保证 64 字节对齐，一个块最多跨两个缓存行）。
+ */
+public class BlockedBloomFilter extends LongBloomFilter {
+
+    // size 的最近一次计算结果
+    private static int sizedElements = -1;
+    private static double sizedProb;
+    private static int sizedHashes;
+    private static int sizedBlockBits;
+    private static int sizedBits;
+
+    /**
+     * 创建一个空的分块过滤器
+     *
+     * @param size     位数，必须是块大小的整数倍
+     * @param capacity 最多容纳的数据ID个数
+     */
+    public BlockedBloomFilter(int size, int capacity) {
+        super(size, capacity);
+    }
+
+    /**
+     * 计算数据ID的 k 个探测位置（都在同一个块内）
+     *
+     * @param dataID    数据ID
+     * @param size      过滤器位数
+     * @param hashes    哈希函数个数
+     * @param blockBits 块的位数（2 的幂，不小于 64）
+     * @return 探测位置
+     */
+    public static int[] positions(NodeKey dataID, int size, int hashes, int blockBits) {
+        long h2 = hash2(dataID);
+        int mask = blockBits - 1;
+        int base = (int) Long.remainderUnsigned(hash1(dataID), size / blockBits) * blockBits;
+
+        int[] positions = new int[hashes];
+        int a = (int) h2 & mask;
+        int b = (int) (h2 >>> 32) & mask;
+        for (int i = 0; i < hashes; i++) {
+            positions[i] = base + a;
+            a = (a + b) & mask;
+            b = (b + i) & mask;
+        }
+        return positions;
+    }
+
+    /**
+     * 经典布隆过滤器的假阳性率 (1 - (1 - 1/m)^(kn))^k
+     *
+     * @param bits     位数 m
+     * @param elements 元素个数 n
+     * @param hashes   哈希函数个数 k
+     * @return 假阳性率
+     */
+    public static double classicFalsePositiveRate(long bits, long elements, int hashes) {
+        double zero = Math.pow(1.0 - 1.0 / bits, (double) hashes * elements);
+        return Math.pow(1.0 - zero, hashes);
+    }
+
+    /**
+     * 分块布隆过滤器的假阳性率：落入一个块的元素个数近似服从均值为 n * B / m 的泊松分布，
+     * 按该分布对每个块（B 位的经典过滤器）的假阳性率取期望。
+     *
+     * @param bits      位数 m
+     * @param elements  元素个数 n
+     * @param hashes    哈希函数个数 k
+     * @param blockBits 块的位数 B
+     * @return 假阳性率
+     */
+    public static double falsePositiveRate(long bits, long elements, int hashes, int blockBits) {
+        double lambda = (double) elements * blockBits / bits;
+        int max = (int) Math.ceil(lambda + 10 * Math.sqrt(lambda) + 10);
+        double fpr = 0;
+        double poisson = Math.exp(-lambda);  // P(i = 0)
+        for (int i = 0; i <= max; i++) {
+            fpr += poisson * classicFalsePositiveRate(blockBits, i, hashes);
+            poisson *= lambda / (i + 1);
+        }
+        return fpr;
+    }
+
+    /**
+     * 满足目标假阳性率所需的位数：从经典过滤器的最优位数开始按块增加，最多增加到 4 倍。
+     *
+     * @param elements  预期元素个数 n
+     * @param prob      目标假阳性率
+     * @param hashes    哈希函数个数 k
+     * @param blockBits 块的位数 B
+     * @return 位数（块大小的整数倍）
+     */
+    public static synchronized int size(int elements, double prob, int hashes, int blockBits) {
+        if (elements == sizedElements && prob == sizedProb && hashes == sizedHashes && blockBits == sizedBlockBits) {
+            return sizedBits;
+        }
+        long classic = (long) Math.ceil(-elements * Math.log(prob) / (Math.log(2) * Math.log(2)));
+        long bits = Math.max(1, (classic + blockBits - 1) / blockBits) * blockBits;
+        long limit = 4 * bits;
+        while (bits < limit && falsePositiveRate(bits, elements, hashes, blockBits) > prob) {
+            bits += blockBits;
+        }
+
+        sizedElements = elements;
+        sizedProb = prob;
+        sizedHashes = hashes;
+        sizedBlockBits = blockBits;
+        sizedBits = (int) bits;
+        return sizedBits;
+    }
+}
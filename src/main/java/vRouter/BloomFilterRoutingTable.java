@@ -1,14 +1,45 @@
 package vRouter;
 
+import kademlia.NodeKey;
+import orestes.bloomfilter.FilterBuilder;
+import peersim.util.IncrementalStats;
+
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class BloomFilterRoutingTable {
 
     // 用于存储节点及其对应的布隆过滤器信息，键为节点ID，值为包含布隆过滤器的联系对象
-    HashMap<BigInteger, ContactWithBloomFilter> bfRoutingTable;
+    HashMap<NodeKey, ContactWithBloomFilter> bfRoutingTable;
+
+    // 过滤器配置，每个数据ID的探测值只计算一次，供所有联系人的所有过滤器使用
+    final FilterBuilder config;
+
+    // 位切片索引，仅在 BIT_SLICED_INDEX 开启且使用布隆过滤器时使用
+    BitSlicedIndex index;
+
+    // 所有联系人过滤器的汇总过滤器，仅在 SUMMARY_FILTER 开启时使用
+    SummaryFilter summary;
+
+    // 最新区块中的数据活跃度评分，按评分淘汰联系人时使用
+    Map<BigInteger, Double> dataScores;
+
+    // 逻辑时间（每次使用联系人加 1）和 getMatch 的调用次数，用于淘汰联系人
+    private long clock = 0;
+    private long lookups = 0;
+
+    public BloomFilterRoutingTable() {
+        config = ContactWithBloomFilter.filterConfig();
+        if (VRouterCommonConfig.BIT_SLICED_INDEX && ContactWithBloomFilter.isBloomFilter()) {
+            index = new BitSlicedIndex(ContactWithBloomFilter.filterBits(config));
+        }
+        if (VRouterCommonConfig.SUMMARY_FILTER) {
+            summary = new SummaryFilter(config.expectedElements(), config.size(), config.hashes());
+        }
+    }
 
     // 向路由表中添加一个联系对象，包含该节点的布隆过滤器信息
     public void put(ContactWithBloomFilter contactBF){
@@ -20,8 +51,131 @@ public class BloomFilterRoutingTable {
         bfRoutingTable.put(contactBF.contact, contactBF);
     }
 
+    // 记录数据ID可以经由节点 from 找到：加入该联系人的布隆过滤器，并同步更新位切片索引和汇总过滤器；
+    // depth 为经由 from 到达数据ID的跳数，仅在过滤器分层时使用
+    public void add(NodeKey from, NodeKey dataID, int depth){
+        add(contact(from), dataID, depth);
+    }
+
+    // 记录一批数据ID都可以经由节点 from 找到，联系人只查找一次
+    public void addAll(NodeKey from, List<NodeKey> dataIDs, List<Integer> depths){
+        ContactWithBloomFilter contactBF = contact(from);
+        for(int i = 0; i < dataIDs.size(); i++){
+            add(contactBF, dataIDs.get(i), depths.get(i));
+        }
+    }
+
+    // 合并节点 from 发来的增量过滤器（按位或，不再逐个计算探测位置），dataIDs 为增量中的数据ID，仅用于汇总过滤器
+    public void merge(NodeKey from, List<LongBloomFilter> digest, List<NodeKey> dataIDs){
+        ContactWithBloomFilter contactBF = contact(from);
+        contactBF.lastUsed = ++clock;
+        for(LongBloomFilter filter: digest){
+            contactBF.merge(filter);
+        }
+        if(summary != null){
+            for(NodeKey dataID: dataIDs){
+                summary.add(dataID);
+            }
+        }
+    }
+
+    // 节点 from 对应的联系人，没有时创建
+    private ContactWithBloomFilter contact(NodeKey from){
+        ContactWithBloomFilter contactBF = get(from);
+        if(contactBF == null){
+            // 联系人数达到上限时先淘汰一个联系人
+            if(VRouterCommonConfig.MAX_CONTACTS > 0 && bfRoutingTable != null
+                    && bfRoutingTable.size() >= VRouterCommonConfig.MAX_CONTACTS){
+                evict();
+            }
+            contactBF = new ContactWithBloomFilter(from);
+            contactBF.createdAt = lookups;
+            put(contactBF);
+        }
+        return contactBF;
+    }
+
+    private void add(ContactWithBloomFilter contactBF, NodeKey dataID, int depth){
+        if(summary != null){
+            summary.add(dataID);
+        }
+        contactBF.lastUsed = ++clock;
+        int[] probe = ContactWithBloomFilter.probe(config, dataID);
+        int filter = contactBF.add(probe, depth);
+        if(index == null || filter < 0){
+            return;
+        }
+        // 新建的过滤器在索引中分配一列
+        if(contactBF.columns == null || filter >= contactBF.columns.length){
+            int[] columns = new int[filter + 1];
+            if(contactBF.columns != null){
+                System.arraycopy(contactBF.columns, 0, columns, 0, contactBF.columns.length);
+            }
+            columns[filter] = index.addColumn(contactBF);
+            contactBF.columns = columns;
+        }
+        index.set(contactBF.columns[filter], probe);
+    }
+
+    // 删除数据ID经由节点 from 的记录（仅对可以删除的过滤器有效），删除时返回 true
+    public boolean remove(NodeKey from, NodeKey dataID){
+        ContactWithBloomFilter contactBF = get(from);
+        if(contactBF == null){
+            return false;
+        }
+        return contactBF.remove(ContactWithBloomFilter.probe(config, dataID));
+    }
+
+    // 记录联系人在 getMatch 中命中一次
+    private void touch(ContactWithBloomFilter c, NodeKey dataID){
+        c.lastUsed = ++clock;
+        c.hits++;
+        if(dataScores != null && VRouterCommonConfig.EVICT_SCORE.equals(VRouterCommonConfig.CONTACT_EVICTION)){
+            Double score = dataScores.get(dataID.toBigInteger());
+            if(score != null){
+                c.score += score;
+            }
+        }
+    }
+
+    /**
+     * 按 CONTACT_EVICTION 淘汰一个联系人：lru 淘汰最久未使用的联系人；hits 淘汰命中率最低的联系人，
+     * 命中率为 (命中次数 + 1) / (加入后的 getMatch 次数 + 2)，新联系人从 1/2 开始；
+     * score 淘汰命中数据的活跃度评分之和最低的联系人。评分或命中率相同时淘汰最久未使用的联系人。
+     */
+    private void evict(){
+        String policy = VRouterCommonConfig.CONTACT_EVICTION;
+        ContactWithBloomFilter victim = null;
+        double victimValue = 0;
+        for(ContactWithBloomFilter c: bfRoutingTable.values()){
+            double value;
+            if(VRouterCommonConfig.EVICT_HITS.equals(policy)){
+                value = (c.hits + 1.0) / (lookups - c.createdAt + 2.0);
+            }else if(VRouterCommonConfig.EVICT_SCORE.equals(policy)){
+                value = c.score;
+            }else{
+                value = 0;
+            }
+            if(victim == null || value < victimValue || (value == victimValue && c.lastUsed < victim.lastUsed)){
+                victim = c;
+                victimValue = value;
+            }
+        }
+        bfRoutingTable.remove(victim.contact);
+        VRouterObserver.evictedContacts.add(1);
+    }
+
+    /**
+     * 联系人个数
+     *
+     * @return int
+     */
+    public int contactCount(){
+        return bfRoutingTable == null ? 0 : bfRoutingTable.size();
+    }
+
     // 根据节点ID获取对应的布隆过滤器信息
-    public ContactWithBloomFilter get(BigInteger node){
+    public ContactWithBloomFilter get(NodeKey node){
         // 如果路由表为空，返回null
         if(bfRoutingTable == null){
             return null;
@@ -31,22 +185,222 @@ public class BloomFilterRoutingTable {
     }
 
     // 根据数据ID查找匹配该数据的节点ID列表
-    public List<BigInteger> getMatch(BigInteger dataID){
+    public List<NodeKey> getMatch(NodeKey dataID){
         // 如果路由表为空，返回null
         if(bfRoutingTable == null){
             return null;
         }
+        lookups++;
+        if(summary == null){
+            return match(dataID);
+        }
+
+        // 汇总过滤器不命中时没有任何联系人匹配，跳过逐个联系人的探测；分别统计两者的耗时，用于估计节省的时间
+        long start = System.nanoTime();
+        boolean hit = summary.contains(dataID);
+        long checked = System.nanoTime();
+        VRouterObserver.summaryNanos.add(checked - start);
+        if(!hit){
+            VRouterObserver.summaryMiss.add(1);
+            return new ArrayList<>();
+        }
+        VRouterObserver.summaryHit.add(1);
+        List<NodeKey> matchNodes = match(dataID);
+        VRouterObserver.scanNanos.add(System.nanoTime() - checked);
+        return matchNodes;
+    }
+
+    // 逐个联系人（或经位切片索引）查找匹配该数据的节点ID列表
+    private List<NodeKey> match(NodeKey dataID){
+        // 探测值只计算一次
+        int[] probe = ContactWithBloomFilter.probe(config, dataID);
+        // 启用索引时一次遍历得到所有匹配的联系人，集合与下面的线性扫描相同
+        if(index != null){
+            return index.match(probe);
+        }
         // 存储所有匹配的节点ID
-        List<BigInteger> matchNodes = new ArrayList<>();
+        List<NodeKey> matchNodes = new ArrayList<>();
 
         // 遍历路由表中的每个联系对象，检查该节点的布隆过滤器是否包含目标数据ID
+        boolean layered = VRouterCommonConfig.ATTENUATED_LAYERS > 0;
         for (ContactWithBloomFilter c: bfRoutingTable.values()) {
+            // 过滤器分层时同时记录包含数据ID的最浅层
+            if(layered){
+                c.matchDepth = c.depth(probe);
+            }
             // 如果布隆过滤器包含目标数据ID，则将节点ID加入匹配节点列表
-            if(c.contain(dataID)) {
+            if(layered ? c.matchDepth >= 0 : c.contain(probe)) {
                 matchNodes.add(c.contact);
+                touch(c, dataID);
             }
         }
         // 返回所有匹配的节点ID
         return matchNodes;
     }
+
+    /**
+     * 在 getMatch 返回的节点中只保留包含数据ID的层最浅的节点（仅在过滤器分层时使用），
+     * 即经由这些节点到达数据ID的跳数最少，反向查询只发给它们而不是所有匹配的节点。
+     *
+     * @param matchNodes getMatch 返回的节点（可以先去掉一部分）
+     * @return 层最浅的节点
+     */
+    public List<NodeKey> shallowest(List<NodeKey> matchNodes){
+        int min = Integer.MAX_VALUE;
+        for(NodeKey n: matchNodes){
+            min = Math.min(min, get(n).matchDepth);
+        }
+        List<NodeKey> nodes = new ArrayList<>();
+        for(NodeKey n: matchNodes){
+            if(get(n).matchDepth == min){
+                nodes.add(n);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * 统计每个过滤器的假阳性率：实测值为探测数据ID（不在任何过滤器中）的命中比例，理论值按过滤器的实际元素个数
+     * 分别计算同样参数下的经典布隆过滤器和分块布隆过滤器；同时统计每次探测一个过滤器的耗时，
+     * 以及使用布隆过滤器时每个探测数据ID访问的缓存行（64 字节）个数。
+     *
+     * @param probes     不在表中的数据ID
+     * @param measured   实测假阳性率
+     * @param classic    经典布隆过滤器的理论假阳性率
+     * @param blocked    分块布隆过滤器的理论假阳性率
+     * @param lines      每个探测数据ID在一个布隆过滤器中访问的缓存行个数
+     * @param probeNanos 每次探测一个过滤器的耗时（纳秒）
+     */
+    public void falsePositiveStats(NodeKey[] probes, IncrementalStats measured, IncrementalStats classic,
+                                   IncrementalStats blocked, IncrementalStats lines, IncrementalStats probeNanos){
+        int[][] probeValues = new int[probes.length][];
+        for(int i = 0; i < probes.length; i++){
+            probeValues[i] = ContactWithBloomFilter.probe(config, probes[i]);
+            if(ContactWithBloomFilter.isBloomFilter()){
+                lines.add(cacheLines(probeValues[i]));
+            }
+        }
+        if(bfRoutingTable == null){
+            return;
+        }
+        int blockedBits = BlockedBloomFilter.size(config.expectedElements(), config.falsePositiveProbability(),
+                config.hashes(), VRouterCommonConfig.BLOCK_BITS);
+        for(ContactWithBloomFilter c: bfRoutingTable.values()){
+            for(int f = 0; f < c.filterCount(); f++){
+                ApproximateMembership filter = c.filterList.get(f);
+                if(filter.isExact()){
+                    continue;
+                }
+                int hits = 0;
+                long start = System.nanoTime();
+                for(int[] p: probeValues){
+                    if(filter.contains(p)){
+                        hits++;
+                    }
+                }
+                probeNanos.add((double) (System.nanoTime() - start) / probes.length);
+                measured.add((double) hits / probes.length);
+                classic.add(BlockedBloomFilter.classicFalsePositiveRate(config.size(), filter.count(), config.hashes()));
+                blocked.add(BlockedBloomFilter.falsePositiveRate(blockedBits, filter.count(), config.hashes(),
+                        VRouterCommonConfig.BLOCK_BITS));
+            }
+        }
+    }
+
+    /**
+     * 所有过滤器占用的位数之和
+     *
+     * @return long
+     */
+    public long filterBits(){
+        long bits = 0;
+        if(bfRoutingTable != null){
+            for(ContactWithBloomFilter c: bfRoutingTable.values()){
+                for(int f = 0; f < c.filterCount(); f++){
+                    bits += c.filterList.get(f).bits();
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * 已构造或仍为精确集合的过滤器占用的位数之和
+     *
+     * @param exact true 时只统计仍为精确集合的过滤器，false 时只统计其余的过滤器
+     * @return long
+     */
+    public long filterBits(boolean exact){
+        long bits = 0;
+        if(bfRoutingTable != null){
+            for(ContactWithBloomFilter c: bfRoutingTable.values()){
+                for(int f = 0; f < c.filterCount(); f++){
+                    ApproximateMembership filter = c.filterList.get(f);
+                    if(filter.isExact() == exact){
+                        bits += filter.bits();
+                    }
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * 统计每个联系人当前的过滤器个数
+     *
+     * @param counts 过滤器个数
+     */
+    public void contactFilterCounts(IncrementalStats counts){
+        if(bfRoutingTable != null){
+            for(ContactWithBloomFilter c: bfRoutingTable.values()){
+                counts.add(c.filterCount());
+            }
+        }
+    }
+
+    /**
+     * 汇总过滤器占用的位数，未启用时为 0
+     *
+     * @return long
+     */
+    public long summaryBits(){
+        return summary == null ? 0 : summary.bits();
+    }
+
+    /**
+     * 已构造或仍为精确集合的过滤器中的数据ID个数之和
+     *
+     * @param exact true 时只统计仍为精确集合的过滤器，false 时只统计其余的过滤器
+     * @return long
+     */
+    public long filterKeys(boolean exact){
+        long keys = 0;
+        if(bfRoutingTable != null){
+            for(ContactWithBloomFilter c: bfRoutingTable.values()){
+                for(int f = 0; f < c.filterCount(); f++){
+                    ApproximateMembership filter = c.filterList.get(f);
+                    if(filter.isExact() == exact){
+                        keys += filter.count();
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    // 探测位置分布在多少个不同的缓存行（512 位）中
+    private static int cacheLines(int[] positions){
+        int count = 0;
+        for(int i = 0; i < positions.length; i++){
+            int line = positions[i] >>> 9;
+            int j = 0;
+            while(j < i && positions[j] >>> 9 != line){
+                j++;
+            }
+            if(j == i){
+                count++;
+            }
+        }
+        return count;
+    }
 }
@@ -95,11 +95,7 @@ public class CentralNodeManager {
     // 计算数据评分
     public void calculateAndUploadScores() {
         dataScores = DataActivityScore.calculateActivityScore(dataAccessCounts, dataAccessNodes);
-<<<<<<< HEAD
         System.out.println("已计算数据评分 ");
-=======
-        System.out.println("已计算数据评分 "+dataScores);
->>>>>>> 22f23f5 (添加了活跃度评分)
     }
 
     private void initCentralNodeManager() {
@@ -133,7 +129,7 @@ public class CentralNodeManager {
         generateAndUpload();
         initCentralNodeManager();
         if (newCentralNode != null && !(newCentralNode.nodeId).equals(currentCentralNode)) {
-            long currentCycle = peersim.core.CommonState.getTime();
+            long currentCycle = VRouterProtocol.currentCycle();
             newCentralNode.setAsCentralNode(true,currentCycle+1);
             currentNode.setAsCentralNode(false,currentCycle);
             System.out.println("选举出新中心节点: " + newCentralNode.getID());
@@ -1,91 +1,407 @@
 package vRouter;
 
-import orestes.bloomfilter.BloomFilter;
+import kademlia.NodeKey;
 import orestes.bloomfilter.FilterBuilder;
 import orestes.bloomfilter.HashProvider;
-import orestes.bloomfilter.memory.BloomFilterMemory;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * 代表一个节点及其与多个布隆过滤器的关联。
- * 每个 ContactWithBloomFilter 对象存储一个联系人的数据并使用布隆过滤器来检查数据ID的存在性。
+ * 代表一个节点及其与多个过滤器的关联。
+ * 每个 ContactWithBloomFilter 对象存储一个联系人的数据并使用近似成员查询过滤器（ApproximateMembership）来检查数据ID的存在性，
+ * 一个过滤器满了之后再创建下一个。
+ * 所有过滤器的配置相同，数据ID的探测值只需计算一次（见 probe），之后对每个过滤器只读写探测值对应的位置。
+ * 过滤器由 VRouterCommonConfig.BLOOM_FILTER 选择：baqend 的 BloomFilterMemory（MD5，参照实现）、LongBloomFilter、
+ * BlockedBloomFilter、CountingBloomFilter、CuckooFilter 或 XorFilter。
+ * 使用可以删除的过滤器（counting、cuckoo）时，数据ID每被加入一次就在过滤器中记录一次，删除时去掉一次，
+ * 这样删除的总是确实加入过的数据ID，不会因为假阳性删掉其它数据ID的记录。
+ * FILTER_GENERATIONS 大于 0 时过滤器按时间分代：每 GENERATION_CYCLES 个周期（或最新的过滤器满了）开始一个新的过滤器，
+ * 数据ID只加入最新的过滤器，最多保留 FILTER_GENERATIONS 个，超过 FILTER_GENERATIONS 个时间窗口的过滤器被丢弃；
+ * 存储数据的节点每个时间窗口重新发布一次索引，仍然存在的数据ID因此会加入新的过滤器，不随旧过滤器丢失。
+ * ATTENUATED_LAYERS 大于 0 时过滤器按距离分层（衰减布隆过滤器）：第 i 层记录经由该联系人 i 跳可以到达的数据ID
+ * （第 0 层为联系人自己存储的数据，超过最深层的数据ID记入最深层），数据ID只记录在已知的最浅一层，
+ * 因此“i 跳以内可以到达”即第 0 层到第 i 层中任何一层包含该数据ID，depth 返回包含数据ID的最浅层。
  */
 public class ContactWithBloomFilter {
 
     // 节点的标识（即该节点的 contact ID）
-    final BigInteger contact;
+    final NodeKey contact;
 
-    // 存储与节点相关联的布隆过滤器列表
-    List<BloomFilter<BigInteger>> bloomFilterList;
+    // 存储与节点相关联的过滤器列表，按创建顺序
+    List<ApproximateMembership> filterList;
+
+    // 每个过滤器创建时的时间窗口，仅在过滤器分代时使用
+    long[] windows;
+
+    // 每个过滤器所在的层，仅在过滤器分层时使用
+    int[] layers;
+
+    // 每个布隆过滤器在位切片索引中的列号，未启用索引时为 null
+    int[] columns;
+
+    // 最近一次匹配到该联系人的索引查询序号
+    int matchStamp;
+
+    // 最近一次匹配到该联系人时包含数据ID的最浅层，仅在过滤器分层时使用
+    int matchDepth;
+
+    // 淘汰联系人时使用：最近一次使用（加入数据ID或匹配）的逻辑时间、创建时反向路由表已有的匹配次数、
+    // 匹配命中次数，以及命中数据的活跃度评分之和
+    long lastUsed;
+    long createdAt;
+    int hits;
+    double score;
 
     /**
      * 构造函数，初始化节点的 contact ID
      *
      * @param income 节点的 contact ID
      */
-    public ContactWithBloomFilter(BigInteger income) {
+    public ContactWithBloomFilter(NodeKey income) {
         contact = income;
     }
 
     /**
-     * 向当前节点关联的布隆过滤器列表中添加数据ID。
-     * 如果数据ID已经存在于某个过滤器中，则不再添加。
-     * 如果没有合适的空间，则创建新的布隆过滤器并添加数据。
+     * 向当前节点关联的过滤器列表中添加数据ID。
+     * 如果数据ID已经存在于某个过滤器中，则不再添加（可以删除的过滤器除外）。
+     * 如果没有合适的空间，则创建新的过滤器并添加数据。
+     * 过滤器分代时只检查和加入最新的过滤器，进入新的时间窗口或最新的过滤器满了时创建新的过滤器，并丢弃超出代数的过滤器。
+     * 过滤器分层时数据ID加入 depth 对应的层。
      *
-     * @param dataID 要存储的数据ID
+     * @param probe 数据ID的探测值（由 probe 计算）
+     * @param depth 经由该联系人到达数据ID的跳数（0 表示联系人自己存储该数据）
+     * @return 接收数据ID的过滤器在列表中的位置，数据ID已存在时返回 -1
      */
-    public void add(BigInteger dataID) {
-        // 如果没有布隆过滤器列表，则初始化一个新的列表
-        if (bloomFilterList == null) {
-            bloomFilterList = new ArrayList<>();
+    public int add(int[] probe, int depth) {
+        // 如果没有过滤器列表，则初始化一个新的列表
+        if (filterList == null) {
+            filterList = new ArrayList<>();
+        }
+
+        if (VRouterCommonConfig.FILTER_GENERATIONS > 0) {
+            return addGeneration(probe);
+        }
+        if (VRouterCommonConfig.ATTENUATED_LAYERS > 0) {
+            return addLayer(probe, Math.min(depth, VRouterCommonConfig.ATTENUATED_LAYERS - 1));
         }
 
         // 如果数据ID已经存在于过滤器中，则直接返回
-        if (contain(dataID)) return;
+        if (!isRemovable() && contain(probe)) return -1;
 
-        // 遍历现有的所有布隆过滤器，找到一个没有达到预期元素数的过滤器
-        for (BloomFilter<BigInteger> bf : bloomFilterList) {
-            if (bf.getEstimatedPopulation() < bf.getExpectedElements()) {
-                bf.add(dataID);  // 将数据ID添加到该布隆过滤器
-                return;
+        // 遍历现有的所有过滤器，找到一个还没有满的过滤器
+        for (int i = 0; i < filterList.size(); i++) {
+            if (filterList.get(i).add(probe)) {
+                return i;
             }
         }
 
-        // 如果没有找到合适的过滤器，创建一个新的布隆过滤器并添加数据ID
-        BloomFilter<BigInteger> bf = new BloomFilterMemory<>(
-                new FilterBuilder(VRouterCommonConfig.EXPECTED_ELEMENTS, VRouterCommonConfig.FALSE_POSITIVE_PROB)
-                        .hashFunction(HashProvider.HashMethod.MD5).complete()
-        );
-        bf.add(dataID);
+        // 如果没有找到合适的过滤器，创建一个新的过滤器并添加数据ID
+        ApproximateMembership filter = newFilter(filterConfig());
+        filter.add(probe);
 
-        // 更新布隆过滤器的计数
+        // 更新过滤器的计数
         VRouterObserver.bloomFilterCount.add(1);
 
-        // 将新创建的布隆过滤器添加到列表中
-        bloomFilterList.add(bf);
+        // 将新创建的过滤器添加到列表中
+        filterList.add(filter);
+        return filterList.size() - 1;
+    }
+
+    // 分代时的 add：数据ID只加入最新的过滤器（旧的过滤器中有该数据ID时也加入，使其在旧过滤器丢弃后仍然存在）
+    private int addGeneration(int[] probe) {
+        long window = currentWindow();
+        expire(window);
+        int newest = filterList.size() - 1;
+        if (newest >= 0 && windows[newest] == window) {
+            ApproximateMembership filter = filterList.get(newest);
+            if (!isRemovable() && filter.contains(probe)) return -1;
+            if (filter.add(probe)) return newest;
+        }
+
+        // 开始新的一代，上一代的过滤器不再加入数据ID，超出代数时丢弃最旧的过滤器
+        if (newest >= 0) {
+            filterList.get(newest).seal();
+        }
+        if (filterList.size() >= VRouterCommonConfig.FILTER_GENERATIONS) {
+            dropOldest();
+        }
+        ApproximateMembership filter = newFilter(filterConfig());
+        filter.add(probe);
+        VRouterObserver.bloomFilterCount.add(1);
+        filterList.add(filter);
+        newest = filterList.size() - 1;
+        if (windows == null || windows.length <= newest) {
+            long[] grown = new long[VRouterCommonConfig.FILTER_GENERATIONS];
+            if (windows != null) {
+                System.arraycopy(windows, 0, grown, 0, windows.length);
+            }
+            windows = grown;
+        }
+        windows[newest] = window;
+        return newest;
+    }
+
+    // 分层时的 add：数据ID已在同一层或更浅的层中时不再加入，否则加入该层中还没有满的过滤器
+    private int addLayer(int[] probe, int layer) {
+        if (!isRemovable()) {
+            for (int i = 0; i < filterList.size(); i++) {
+                if (layers[i] <= layer && filterList.get(i).contains(probe)) return -1;
+            }
+        }
+        for (int i = 0; i < filterList.size(); i++) {
+            if (layers[i] == layer && filterList.get(i).add(probe)) return i;
+        }
+
+        ApproximateMembership filter = newFilter(filterConfig());
+        filter.add(probe);
+        VRouterObserver.bloomFilterCount.add(1);
+        filterList.add(filter);
+        int added = filterList.size() - 1;
+        if (layers == null || layers.length <= added) {
+            int[] grown = new int[Math.max(VRouterCommonConfig.ATTENUATED_LAYERS, 2 * added)];
+            if (layers != null) {
+                System.arraycopy(layers, 0, grown, 0, layers.length);
+            }
+            layers = grown;
+        }
+        layers[added] = layer;
+        return added;
+    }
+
+    /**
+     * 包含数据ID的最浅层（仅在过滤器分层时使用），即经由该联系人到达数据ID的最少跳数（超过最深层时为最深层）
+     *
+     * @param probe 数据ID的探测值（由 probe 计算）
+     * @return 层号，没有任何一层包含数据ID时返回 -1
+     */
+    int depth(int[] probe) {
+        int depth = -1;
+        if (filterList == null) {
+            return depth;
+        }
+        for (int i = 0; i < filterList.size(); i++) {
+            if ((depth < 0 || layers[i] < depth) && filterList.get(i).contains(probe)) {
+                depth = layers[i];
+            }
+        }
+        return depth;
+    }
+
+    // 丢弃 FILTER_GENERATIONS 个时间窗口之前创建的过滤器
+    private void expire(long window) {
+        while (filterList != null && !filterList.isEmpty()
+                && windows[0] <= window - VRouterCommonConfig.FILTER_GENERATIONS) {
+            dropOldest();
+        }
+    }
+
+    private void dropOldest() {
+        filterList.remove(0);
+        System.arraycopy(windows, 1, windows, 0, windows.length - 1);
+        VRouterObserver.droppedFilterCount.add(1);
     }
 
     /**
-     * 检查数据ID是否存在于当前节点的任何布隆过滤器中。
+     * 当前的时间窗口（每 GENERATION_CYCLES 个周期一个）
      *
-     * @param dataID 要检查的数据ID
-     * @return 如果数据ID在任何布隆过滤器中存在，则返回 true；否则返回 false。
+     * @return long
      */
-    public boolean contain(BigInteger dataID) {
-        // 如果布隆过滤器列表为空，则返回 false
-        if (bloomFilterList == null) {
+    static long currentWindow() {
+        return VRouterProtocol.currentCycle() / VRouterCommonConfig.GENERATION_CYCLES;
+    }
+
+    /**
+     * 合并一个增量过滤器（按位或）：能放入最后一个过滤器时合并到其中，否则作为新的过滤器。
+     * 仅用于 native 和 blocked 过滤器（与增量过滤器的位数和探测位置相同）。
+     *
+     * @param digest 增量过滤器
+     * @return 接收增量的过滤器在列表中的位置
+     */
+    public int merge(LongBloomFilter digest) {
+        if (filterList == null) {
+            filterList = new ArrayList<>();
+        }
+        int last = filterList.size() - 1;
+        if (last >= 0 && ((LongBloomFilter) filterList.get(last)).merge(digest)) {
+            return last;
+        }
+        LongBloomFilter filter = (LongBloomFilter) newFilter(filterConfig());
+        filter.merge(digest);
+        VRouterObserver.bloomFilterCount.add(1);
+        filterList.add(filter);
+        return filterList.size() - 1;
+    }
+
+    /**
+     * 由一组数据ID构造增量过滤器，每个最多容纳 EXPECTED_ELEMENTS 个数据ID
+     *
+     * @param config  过滤器配置
+     * @param dataIDs 数据ID
+     * @return 增量过滤器
+     */
+    static List<LongBloomFilter> digest(FilterBuilder config, List<NodeKey> dataIDs) {
+        List<LongBloomFilter> digest = new ArrayList<>();
+        LongBloomFilter filter = null;
+        for (NodeKey dataID : dataIDs) {
+            int[] probe = probe(config, dataID);
+            if (filter == null || !filter.add(probe)) {
+                filter = (LongBloomFilter) newFilter(config);
+                filter.add(probe);
+                digest.add(filter);
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * 检查数据ID是否存在于当前节点的任何过滤器中。
+     *
+     * @param probe 数据ID的探测值（由 probe 计算）
+     * @return 如果数据ID在任何过滤器中存在，则返回 true；否则返回 false。
+     */
+    public boolean contain(int[] probe) {
+        // 如果过滤器列表为空，则返回 false
+        if (filterList == null) {
             return false;
         }
+        if (VRouterCommonConfig.FILTER_GENERATIONS > 0) {
+            expire(currentWindow());
+        }
 
-        // 遍历所有的布隆过滤器，检查是否包含该数据ID
-        for (BloomFilter<BigInteger> bf : bloomFilterList) {
-            if (bf.contains(dataID)) return true;  // 如果某个过滤器包含该数据ID，返回 true
+        // 遍历所有的过滤器，检查是否包含该数据ID
+        for (ApproximateMembership filter : filterList) {
+            if (filter.contains(probe)) return true;  // 如果某个过滤器包含该数据ID，返回 true
         }
 
         // 如果没有任何过滤器包含该数据ID，返回 false
         return false;
     }
+
+    /**
+     * 从当前节点关联的过滤器中删除数据ID（只删除一次，分代时每一代删除一次），仅对可以删除的过滤器有效。
+     *
+     * @param probe 数据ID的探测值（由 probe 计算）
+     * @return 删除时返回 true；数据ID不在任何过滤器中或过滤器不支持删除时返回 false
+     */
+    public boolean remove(int[] probe) {
+        if (filterList == null) {
+            return false;
+        }
+        // 分代时重新发布的数据ID在每一代中各有一次记录，都要删除
+        boolean removed = false;
+        for (ApproximateMembership filter : filterList) {
+            if (filter.remove(probe)) {
+                if (VRouterCommonConfig.FILTER_GENERATIONS == 0) return true;
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    // 过滤器个数（分代时不含已过期的过滤器）
+    int filterCount() {
+        if (filterList == null) {
+            return 0;
+        }
+        if (VRouterCommonConfig.FILTER_GENERATIONS > 0) {
+            expire(currentWindow());
+        }
+        return filterList.size();
+    }
+
+    /**
+     * 所有过滤器共用的配置（预期元素数、假阳性概率和 MD5 哈希），布隆过滤器的位数和哈希函数个数也由它计算。
+     *
+     * @return 过滤器配置
+     */
+    static FilterBuilder filterConfig() {
+        return new FilterBuilder(VRouterCommonConfig.EXPECTED_ELEMENTS, VRouterCommonConfig.FALSE_POSITIVE_PROB)
+                .hashFunction(HashProvider.HashMethod.MD5).complete();
+    }
+
+    /**
+     * 当前选择的过滤器是否为布隆过滤器（探测值为位位置，可以建立位切片索引）
+     *
+     * @return boolean
+     */
+    static boolean isBloomFilter() {
+        String filter = VRouterCommonConfig.BLOOM_FILTER;
+        return VRouterCommonConfig.FILTER_BAQEND.equals(filter) || VRouterCommonConfig.FILTER_NATIVE.equals(filter)
+                || VRouterCommonConfig.FILTER_BLOCKED.equals(filter);
+    }
+
+    /**
+     * 当前选择的过滤器是否可以删除数据ID
+     *
+     * @return boolean
+     */
+    static boolean isRemovable() {
+        String filter = VRouterCommonConfig.BLOOM_FILTER;
+        return VRouterCommonConfig.FILTER_COUNTING.equals(filter) || VRouterCommonConfig.FILTER_CUCKOO.equals(filter);
+    }
+
+    /**
+     * 在给定配置下每个布隆过滤器的位数：分块过滤器按分块后的假阳性率增加位数，其余与配置相同。
+     *
+     * @param config 过滤器配置
+     * @return 位数
+     */
+    static int filterBits(FilterBuilder config) {
+        if (VRouterCommonConfig.FILTER_BLOCKED.equals(VRouterCommonConfig.BLOOM_FILTER)) {
+            return BlockedBloomFilter.size(config.expectedElements(), config.falsePositiveProbability(), config.hashes(),
+                    VRouterCommonConfig.BLOCK_BITS);
+        }
+        return config.size();
+    }
+
+    /**
+     * 按当前选择创建一个空的过滤器
+     *
+     * @param config 过滤器配置
+     * @return 过滤器
+     */
+    static ApproximateMembership newFilter(FilterBuilder config) {
+        int capacity = config.expectedElements();
+        switch (VRouterCommonConfig.BLOOM_FILTER) {
+            case VRouterCommonConfig.FILTER_NATIVE:
+                return new LongBloomFilter(config.size(), capacity);
+            case VRouterCommonConfig.FILTER_BLOCKED:
+                return new BlockedBloomFilter(filterBits(config), capacity);
+            case VRouterCommonConfig.FILTER_COUNTING:
+                return new CountingBloomFilter(config.size(), capacity);
+            case VRouterCommonConfig.FILTER_CUCKOO:
+                return new CuckooFilter(CuckooFilter.buckets(capacity),
+                        CuckooFilter.fingerprintBits(config.falsePositiveProbability()), capacity);
+            case VRouterCommonConfig.FILTER_XOR:
+                return new XorFilter(XorFilter.fingerprintBits(config.falsePositiveProbability()), capacity);
+            default:
+                return new BaqendBloomFilter(config);
+        }
+    }
+
+    /**
+     * 计算数据ID在给定配置下的探测值：布隆过滤器为 k 个位位置（使用 baqend 过滤器时与 BloomFilter 的 add/contains 相同，计数布隆过滤器与 native 相同），
+     * 布谷鸟过滤器为两个桶号和指纹，xor 过滤器为 64 位哈希。
+     *
+     * @param config 过滤器配置
+     * @param dataID 数据ID
+     * @return 探测值
+     */
+    static int[] probe(FilterBuilder config, NodeKey dataID) {
+        switch (VRouterCommonConfig.BLOOM_FILTER) {
+            case VRouterCommonConfig.FILTER_NATIVE:
+            case VRouterCommonConfig.FILTER_COUNTING:
+                return LongBloomFilter.positions(dataID, config.size(), config.hashes());
+            case VRouterCommonConfig.FILTER_BLOCKED:
+                return BlockedBloomFilter.positions(dataID, filterBits(config), config.hashes(), VRouterCommonConfig.BLOCK_BITS);
+            case VRouterCommonConfig.FILTER_CUCKOO:
+                return CuckooFilter.probe(dataID, CuckooFilter.buckets(config.expectedElements()),
+                        CuckooFilter.fingerprintBits(config.falsePositiveProbability()));
+            case VRouterCommonConfig.FILTER_XOR:
+                return XorFilter.probe(dataID);
+            default:
+                return BaqendBloomFilter.positions(config, dataID);
+        }
+    }
 }
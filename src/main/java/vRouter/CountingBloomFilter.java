@@ -0,0 +1,75 @@
+package vRouter;
+
+/**
+ * 计数布隆过滤器：与 LongBloomFilter 使用相同的位数和探测位置，但每个位置是一个 4 位计数器而不是一位，
+ * 加入数据ID时 k 个计数器加 1，删除时减 1，因此可以删除已加入的数据ID。
+ * 计数器达到 15 后不再变化（删除时也不减），避免溢出后出现漏报；预期元素数下计数器达到 15 的概率可以忽略。
+ * 占用的位数是同样参数的布隆过滤器的 4 倍。
+ */
+public class CountingBloomFilter implements ApproximateMembership {
+
+    // 每个计数器的位数及最大值
+    static final int COUNTER_BITS = 4;
+    private static final int MAX_COUNT = (1 << COUNTER_BITS) - 1;
+
+    // 计数器
+    private final PackedArray counters;
+
+    // 最多容纳的数据ID个数
+    private final int capacity;
+
+    private int count = 0;
+
+    /**
+     * 创建一个空的过滤器
+     *
+     * @param size     计数器个数（即同样参数的布隆过滤器的位数）
+     * @param capacity 最多容纳的数据ID个数
+     */
+    public CountingBloomFilter(int size, int capacity) {
+        this.counters = new PackedArray(size, COUNTER_BITS);
+        this.capacity = capacity;
+    }
+
+    public boolean contains(int[] positions) {
+        for (int p : positions) {
+            if (counters.get(p) == 0) return false;
+        }
+        return true;
+    }
+
+    public boolean add(int[] positions) {
+        if (count >= capacity) return false;
+        for (int p : positions) {
+            int c = counters.get(p);
+            if (c < MAX_COUNT) counters.set(p, c + 1);
+        }
+        count++;
+        return true;
+    }
+
+    /**
+     * 删除一个数据ID：所有探测位置的计数器都不为 0 时各减 1（已达到最大值的计数器不变）。
+     * 只能删除确实加入过的数据ID，否则会使其它数据ID漏报。
+     *
+     * @param positions 数据ID的探测位置
+     * @return 删除时返回 true
+     */
+    public boolean remove(int[] positions) {
+        if (!contains(positions)) return false;
+        for (int p : positions) {
+            int c = counters.get(p);
+            if (c < MAX_COUNT) counters.set(p, c - 1);
+        }
+        count--;
+        return true;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long bits() {
+        return counters.bits();
+    }
+}
@@ -0,0 +1,196 @@
+package vRouter;
+
+import kademlia.NodeKey;
+
+/**
+ * 布谷鸟过滤器：每个桶 4 个槽，每个槽保存数据ID的 f 位指纹，数据ID可以放在两个候选桶之一，
+ * 第二个桶由第一个桶和指纹得到（alt(i) = (hash(fp) - i) mod 桶数，对任意桶数都满足 alt(alt(i)) = i），
+ * 因此搬移指纹时不需要原数据ID，也可以按指纹删除。
+ * 指纹位数 f = ceil(log2(2 * 4 / FALSE_POSITIVE_PROB))，桶数按 EXPECTED_ELEMENTS 个元素时 95% 的负载计算，
+ * 元素数达到预期或搬移次数用尽时过滤器已满（最后被挤出的指纹保存在暂存槽中，不会丢失）。
+ * 搬移时的随机选择使用过滤器自己的伪随机数，不影响仿真的随机数序列。
+ */
+public class CuckooFilter implements ApproximateMembership {
+
+    // 每个桶的槽数
+    static final int SLOTS = 4;
+
+    // 满载时的负载因子
+    static final double LOAD = 0.95;
+
+    // 一次插入最多搬移的次数
+    static final int MAX_KICKS = 500;
+
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    // 指纹，0 表示空槽
+    private final PackedArray slots;
+
+    // 桶数
+    private final int buckets;
+
+    // 最多容纳的数据ID个数
+    private final int capacity;
+
+    private int count = 0;
+
+    // 暂存槽：最后一次插入失败时被挤出的指纹及其所在桶，-1 表示为空
+    private int victim = 0;
+    private int victimBucket = -1;
+
+    // 搬移时使用的伪随机数状态
+    private long random = SEED;
+
+    /**
+     * 创建一个空的过滤器
+     *
+     * @param buckets         桶数
+     * @param fingerprintBits 指纹位数
+     * @param capacity        最多容纳的数据ID个数
+     */
+    public CuckooFilter(int buckets, int fingerprintBits, int capacity) {
+        this.buckets = buckets;
+        this.capacity = capacity;
+        this.slots = new PackedArray(buckets * SLOTS, fingerprintBits);
+    }
+
+    public boolean contains(int[] probe) {
+        int fp = probe[2];
+        if (victimBucket >= 0 && victim == fp && (victimBucket == probe[0] || victimBucket == probe[1])) {
+            return true;
+        }
+        return find(probe[0], fp) >= 0 || find(probe[1], fp) >= 0;
+    }
+
+    public boolean add(int[] probe) {
+        if (count >= capacity || victimBucket >= 0) {
+            return false;
+        }
+        count++;
+        int fp = probe[2];
+        if (put(probe[0], fp) || put(probe[1], fp)) {
+            return true;
+        }
+
+        // 两个桶都满：随机挤出一个指纹，放到它的另一个桶中
+        int bucket = (next() & 1) == 0 ? probe[0] : probe[1];
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int slot = bucket * SLOTS + (next() & (SLOTS - 1));
+            int kicked = slots.get(slot);
+            slots.set(slot, fp);
+            fp = kicked;
+            bucket = alternate(bucket, fp, buckets);
+            if (put(bucket, fp)) {
+                return true;
+            }
+        }
+        victim = fp;
+        victimBucket = bucket;
+        return true;
+    }
+
+    /**
+     * 按指纹删除一个数据ID（只能删除确实加入过的数据ID）
+     *
+     * @param probe 数据ID的探测值
+     * @return 找到并删除时返回 true
+     */
+    public boolean remove(int[] probe) {
+        int fp = probe[2];
+        if (victimBucket >= 0 && victim == fp && (victimBucket == probe[0] || victimBucket == probe[1])) {
+            victimBucket = -1;
+            count--;
+            return true;
+        }
+        int slot = find(probe[0], fp);
+        if (slot < 0) {
+            slot = find(probe[1], fp);
+        }
+        if (slot < 0) {
+            return false;
+        }
+        slots.set(slot, 0);
+        count--;
+        return true;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long bits() {
+        return slots.bits();
+    }
+
+    // 指纹在桶中的槽号，没有时返回 -1
+    private int find(int bucket, int fp) {
+        int base = bucket * SLOTS;
+        for (int s = base; s < base + SLOTS; s++) {
+            if (slots.get(s) == fp) return s;
+        }
+        return -1;
+    }
+
+    // 放入桶中的空槽
+    private boolean put(int bucket, int fp) {
+        int base = bucket * SLOTS;
+        for (int s = base; s < base + SLOTS; s++) {
+            if (slots.get(s) == 0) {
+                slots.set(s, fp);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // xorshift 伪随机数
+    private int next() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) random;
+    }
+
+    // 指纹所在的另一个桶
+    private static int alternate(int bucket, int fp, int buckets) {
+        long h = (fp * 0x5bd1e995L) & 0xFFFFFFFFL;
+        return (int) ((h % buckets - bucket + buckets) % buckets);
+    }
+
+    /**
+     * 计算数据ID的探测值 {第一个桶, 第二个桶, 指纹}
+     *
+     * @param dataID          数据ID
+     * @param buckets         桶数
+     * @param fingerprintBits 指纹位数
+     * @return 探测值
+     */
+    public static int[] probe(NodeKey dataID, int buckets, int fingerprintBits) {
+        long h = LongBloomFilter.hash1(dataID);
+        int fp = (int) (h >>> (64 - fingerprintBits));
+        if (fp == 0) fp = 1;  // 0 表示空槽
+        int first = (int) (((h & 0xFFFFFFFFL) * buckets) >>> 32);
+        return new int[] { first, alternate(first, fp, buckets), fp };
+    }
+
+    /**
+     * 达到假阳性概率所需的指纹位数：两个桶共 2 * 4 个槽，每个槽误报的概率为 2^-f
+     *
+     * @param prob 假阳性概率
+     * @return 指纹位数
+     */
+    public static int fingerprintBits(double prob) {
+        int bits = (int) Math.ceil(Math.log(2.0 * SLOTS / prob) / Math.log(2));
+        return Math.max(4, Math.min(32, bits));
+    }
+
+    /**
+     * 以 LOAD 的负载容纳 elements 个数据ID所需的桶数
+     *
+     * @param elements 预期元素个数
+     * @return 桶数
+     */
+    public static int buckets(int elements) {
+        return Math.max(1, (int) Math.ceil(elements / (SLOTS * LOAD)));
+    }
+}
@@ -0,0 +1,98 @@
+package vRouter;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 并行执行所有节点的 VRouterProtocol.nextCycle，代替 PeerSim 默认的 FullNextCycle（配置中需设置 simulation.nodefaultcycle）。
+ * 节点在本周期发出的消息先放入发送方的 outbox（双缓冲），所有节点执行完毕后按节点顺序投递到接收方的消息队列，
+ * 在下一个周期处理；默认的顺序执行中，消息在本周期还是下一个周期处理取决于接收方排在发送方之前还是之后。
+ * 每个节点在一个周期内只读写自己的状态，全局统计使用 SynchronizedStats，因此结果与线程数和执行顺序无关。
+ * 中心节点任务（区块链）在所有节点执行完本周期后按节点顺序执行。
+ * 其它控制器（数据生成、查询生成）发出的消息在下一次执行开始时投递，因此本控制器必须是第一个执行的控制器
+ * （按 order.control 的顺序，没有设置时按控制器名的字母顺序，例如 control.cycle），否则构造时抛出 IllegalParameterException。
+ */
+public class CycleEngine implements Control {
+
+	private final static String PAR_PROT = "protocol";
+	private final static String PAR_THREADS = "threads"; // 线程数，默认为处理器个数
+	private final static String PAR_CONTROL = "control"; // 控制器的配置前缀
+
+	// 每个任务最少执行的节点数
+	private final static int GRAIN = 256;
+
+	private final int pid;
+	private final ForkJoinPool pool;
+
+	/**
+	 * 构造函数，初始化协议 ID 和线程池
+	 * @param prefix 配置前缀
+	 */
+	public CycleEngine(String prefix) {
+		pid = Configuration.getPid(prefix + "." + PAR_PROT); // 获取协议 ID
+		int threads = Configuration.getInt(prefix + "." + PAR_THREADS, Runtime.getRuntime().availableProcessors());
+		if (threads < 1)
+			throw new IllegalParameterException(prefix + "." + PAR_THREADS, "must be positive");
+		String[] controls = Configuration.getNames(PAR_CONTROL); // 按执行顺序排列的控制器
+		if (controls.length == 0 || !controls[0].equals(prefix))
+			throw new IllegalParameterException(prefix, "must be the first control (set order.control or rename it, e.g. control.cycle)");
+		pool = new ForkJoinPool(threads);
+		VRouterProtocol.doubleBuffered = true;
+	}
+
+	/**
+	 * 执行一个周期：投递上一阶段的消息，并行执行所有在线节点的 nextCycle，再投递本周期的消息并执行中心节点任务
+	 *
+	 * @return boolean 始终返回 false
+	 */
+	public boolean execute() {
+		deliverAll();
+		pool.invoke(new Cycle(0, Network.size()));
+		deliverAll();
+		for (int i = 0; i < Network.size(); i++) {
+			Node node = Network.get(i);
+			if (node.isUp())
+				((VRouterProtocol) node.getProtocol(pid)).executeCentralTasks((MyNode) node);
+		}
+		return false;
+	}
+
+	// 按节点顺序投递所有节点 outbox 中的消息
+	private void deliverAll() {
+		for (int i = 0; i < Network.size(); i++)
+			((VRouterProtocol) Network.get(i).getProtocol(pid)).deliver();
+	}
+
+	// 执行 [from, to) 范围内节点的 nextCycle，范围较大时一分为二
+	private class Cycle extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		Cycle(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > GRAIN) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Cycle(from, mid), new Cycle(mid, to));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				Node node = Network.get(i);
+				if (node.isUp())
+					((VRouterProtocol) node.getProtocol(pid)).nextCycle(node, pid);
+			}
+		}
+	}
+}
@@ -7,13 +7,14 @@ import peersim.core.Control;
 import peersim.core.Network;
 import peersim.core.Node;
 
-import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Queue;
 
 /**
  * 此控制器生成随机的查询流量，节点向随机目标节点发送查询请求。
+ * 设置 remove 时每个周期还会随机删除若干已存储的数据（数据的持续变动），删除的数据不再被查询。
  *
  * @author Daniele Furlan, Maurizio Bonani
  * @version 1.0
@@ -27,6 +28,7 @@ public class DataGenerator implements Control {
 	private final static String PAR_PROT = "protocol";
 	private final static String TURNS = "turns";  // 数据生成的周期
 	private final static String CYCLES = "cycles"; // 模拟总周期
+	private final static String PAR_REMOVE = "remove"; // 每个周期删除的已存储数据个数
 
 	/**
 	 * MSPastry 协议 ID
@@ -34,10 +36,15 @@ public class DataGenerator implements Control {
 	private final int pid;
 	private int dataGenerateSimCycle = Integer.MAX_VALUE; // 数据生成周期
 	private int totalSimCycle = Integer.MAX_VALUE; // 模拟总周期
+	private final int removePerTurn; // 每个周期删除的数据个数，0 表示不删除
 	UniformRandomGenerator urg;
 
 	private int turns = 0;
 
+	// 已存储且尚未删除的数据ID及存储它的节点（仅在删除数据时记录）
+	private final ArrayList<NodeKey> storedData = new ArrayList<>();
+	private final ArrayList<Node> storedAt = new ArrayList<>();
+
 	// ______________________________________________________________________________________________
 	/**
 	 * 构造函数，初始化协议 ID 和配置参数
@@ -47,6 +54,7 @@ public class DataGenerator implements Control {
 		pid = Configuration.getPid(prefix + "." + PAR_PROT); // 获取协议 ID
 		dataGenerateSimCycle = Configuration.getInt(prefix + "." + TURNS); // 获取数据生成周期
 		totalSimCycle = Configuration.getInt(prefix + "." + CYCLES); // 获取模拟总周期
+		removePerTurn = Configuration.getInt(prefix + "." + PAR_REMOVE, 0); // 获取每个周期删除的数据个数
 		urg = new UniformRandomGenerator(KademliaCommonConfig.BITS, CommonState.r); // 初始化随机数生成器
 	}
 
@@ -83,10 +91,34 @@ public class DataGenerator implements Control {
 
 			VRouterProtocol p = (VRouterProtocol) start.getProtocol(pid);  // 获取节点的协议
 
-			BigInteger dataID = urg.generate();  // 生成一个随机的数据 ID
+			NodeKey dataID = NodeKey.of(urg.generate());  // 生成一个随机的数据 ID
 			QueryGenerator.availableData.add(dataID);  // 将生成的数据 ID 添加到查询生成器的队列中
+			QueryGenerator.addToCatalog(dataID);
 			VRouterObserver.dataIndexTraffic.put(dataID, 0);  // 记录数据 ID 的流量统计
 			p.storeData(dataID, pid);  // 存储数据
+			TraceRecorder.record(TraceRecord.Op.STORE, start, dataID);
+			if (removePerTurn > 0) {
+				storedData.add(dataID);
+				storedAt.add(start);
+			}
+		}
+
+		// 随机删除已存储的数据，撤销其索引，并且不再查询它
+		for (int i = 0; i < removePerTurn && !storedData.isEmpty(); i++) {
+			int k = CommonState.r.nextInt(storedData.size());
+			NodeKey dataID = storedData.get(k);
+			Node node = storedAt.get(k);
+			int last = storedData.size() - 1;
+			storedData.set(k, storedData.get(last));
+			storedAt.set(k, storedAt.get(last));
+			storedData.remove(last);
+			storedAt.remove(last);
+
+			QueryGenerator.availableData.remove(dataID);
+			QueryGenerator.catalog.remove(dataID);
+			VRouterObserver.dataIndexTraffic.remove(dataID);
+			((VRouterProtocol) node.getProtocol(pid)).removeData(dataID, pid);
+			TraceRecorder.record(TraceRecord.Op.REMOVE, node, dataID);
 		}
 		return false;  // 执行完成
 	}
@@ -0,0 +1,121 @@
+package vRouter;
+
+import java.util.HashMap;
+
+/**
+ * 去重表：记录节点已经处理过的查找ID（handledQuery）或数据ID（handledIndex），每个键对应一个值。
+ * DEDUP_TTL 大于 0 时记录按代过期：键记入当前代，每 DEDUP_TTL 个周期当前代变为上一代、上一代被丢弃，
+ * 因此一条记录在加入后 DEDUP_TTL 到 2 * DEDUP_TTL 个周期之间过期，过期后同一查找或数据ID的消息会被重新处理和转发。
+ * 丢弃一代时直接换用新的 HashMap，旧的表（包括 HashMap 不会缩小的桶数组）整体释放。
+ * DEDUP_TTL 为 0 时记录永不过期，与普通的 HashMap 相同。
+ * 撤销索引需要的状态（发来索引的节点和索引的下一跳）不放在去重表中，而是记录在不过期的 VRouterProtocol.indexRoutes 中，
+ * 否则 handledIndex 过期后撤销消息不再转发，下游的过滤器中会一直留着已删除的数据ID。
+ */
+public class DedupTable<K, V> {
+
+    // 当前代和上一代的记录
+    private HashMap<K, V> current = new HashMap<>();
+    private HashMap<K, V> previous = new HashMap<>();
+
+    // 当前代开始的周期
+    private long generationStart = 0;
+
+    /**
+     * 键对应的值
+     *
+     * @param key 键
+     * @return 值，没有记录或已过期时返回 null
+     */
+    public V get(K key) {
+        rotate();
+        V value = current.get(key);
+        return value != null ? value : previous.get(key);
+    }
+
+    /**
+     * 是否有键的记录（未过期）
+     *
+     * @param key 键
+     * @return boolean
+     */
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * 记录键，记录从现在起重新计算过期时间
+     *
+     * @param key 键
+     * @param value  值
+     */
+    public void put(K key, V value) {
+        rotate();
+        current.put(key, value);
+        if (!previous.isEmpty()) {
+            previous.remove(key);
+        }
+    }
+
+    /**
+     * 删除键的记录
+     *
+     * @param key 键
+     * @return 删除前的值，没有记录或已过期时返回 null
+     */
+    public V remove(K key) {
+        rotate();
+        V value = current.remove(key);
+        V old = previous.remove(key);
+        return value != null ? value : old;
+    }
+
+    /**
+     * 记录个数（未过期）
+     *
+     * @return int
+     */
+    public int size() {
+        rotate();
+        return current.size() + previous.size();
+    }
+
+    /**
+     * 估算的堆内存占用（字节）：两个 HashMap 及其桶数组和条目，键与消息共享，不计入
+     *
+     * @return long
+     */
+    public long memoryBytes() {
+        rotate();
+        return 24 + mapBytes(current) + mapBytes(previous);
+    }
+
+    // HashMap 对象、按负载因子 0.75 分配的桶数组和每个条目
+    private static long mapBytes(HashMap<?, ?> map) {
+        long bytes = 48;
+        if (!map.isEmpty()) {
+            int buckets = Integer.highestOneBit(Math.max(1, (int) (map.size() / 0.75f)) * 2 - 1);
+            bytes += 16 + 4L * Math.max(16, buckets) + 32L * map.size();
+        }
+        return bytes;
+    }
+
+    // 当前代满 DEDUP_TTL 个周期时换代，超过两代时全部丢弃
+    private void rotate() {
+        int ttl = VRouterCommonConfig.DEDUP_TTL;
+        if (ttl <= 0) {
+            return;
+        }
+        long cycle = VRouterProtocol.currentCycle();
+        long age = cycle - generationStart;
+        if (age < ttl) {
+            return;
+        }
+        if (age < 2L * ttl) {
+            previous = current;
+        } else {
+            previous = new HashMap<>();
+        }
+        current = new HashMap<>();
+        generationStart = cycle - age % ttl;
+    }
+}
@@ -0,0 +1,63 @@
+package vRouter;
+
+import kademlia.NodeKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量索引消息：一个节点在一个周期内要发给同一个下一跳的所有索引合并为一条消息。
+ * 每个数据ID保留自己的跳数，接收方一次把所有数据ID加入发送方的过滤器，再按各自的下一跳重新分组转发。
+ * 作为摘要消息（INDEX_DIGEST）时还带有这些数据ID构成的增量过滤器，接收方直接按位合并到发送方的过滤器中，不再逐个计算探测位置；
+ * 数据ID本身仍然随消息发送，因为接收方要按数据ID选择下一跳。
+ */
+public class IndexBatchMessage {
+    // 数据ID
+    public final List<NodeKey> dataIDs = new ArrayList<>();
+    // 每个数据ID的索引跳数
+    public final List<Integer> hops = new ArrayList<>();
+    // 消息的来源节点ID
+    public NodeKey from;
+    // 增量过滤器（每个最多容纳 EXPECTED_ELEMENTS 个数据ID），不是摘要消息时为 null
+    public List<LongBloomFilter> digest;
+
+    // 构造函数，初始化来源节点
+    public IndexBatchMessage(NodeKey origin) {
+        this.from = origin;
+    }
+
+    // 加入一个数据ID及其跳数
+    public void add(NodeKey dataID, int hops) {
+        this.dataIDs.add(dataID);
+        this.hops.add(hops);
+    }
+
+    // 删除一个数据ID（撤销尚未发出的索引），返回是否删除
+    public boolean remove(NodeKey dataID) {
+        boolean removed = false;
+        for (int i = dataIDs.size() - 1; i >= 0; i--) {
+            if (dataIDs.get(i).equals(dataID)) {
+                dataIDs.remove(i);
+                hops.remove(i);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    // 消息中数据ID的个数
+    public int size() {
+        return dataIDs.size();
+    }
+
+    // 消息的字节数（估算）：来源节点ID，每个数据ID及其跳数，以及压缩后的增量过滤器
+    public long bytes(int keyBytes) {
+        long bytes = keyBytes + (long) size() * (keyBytes + 4);
+        if (digest != null) {
+            for (LongBloomFilter filter : digest) {
+                bytes += filter.encodedBytes();
+            }
+        }
+        return bytes;
+    }
+}
@@ -1,27 +1,37 @@
 package vRouter;
 
-import java.math.BigInteger;
+import kademlia.NodeKey;
 
 public class IndexMessage {
     // 数据ID
-    public BigInteger dataID;
+    public NodeKey dataID;
     // 消息的来源节点ID
-    public BigInteger from;
+    public NodeKey from;
     // 消息传递的跳数
     public int hops;
+    // 是否为撤销索引的消息（数据被删除），沿与索引消息相同的路径传播
+    public boolean remove;
 
     // 构造函数，初始化数据ID、来源节点和跳数
-    public IndexMessage(BigInteger data, BigInteger origin){
+    public IndexMessage(NodeKey data, NodeKey origin){
         this.dataID = data;  // 设置数据ID
         this.from = origin;   // 设置来源节点ID
         this.hops = 1;        // 初始化跳数为1
     }
 
+    // 创建撤销数据ID索引的消息
+    public static IndexMessage unindex(NodeKey data, NodeKey origin){
+        IndexMessage msg = new IndexMessage(data, origin);
+        msg.remove = true;
+        return msg;
+    }
+
     // 生成一个转发消息的副本，更新跳数
-    public IndexMessage relay(BigInteger local){
+    public IndexMessage relay(NodeKey local){
         // 创建一个新的IndexMessage副本，并设置新的来源节点为当前节点
         IndexMessage relay = new IndexMessage(dataID, local);
         relay.hops = this.hops + 1; // 跳数加1，表示消息已经转发了一次
+        relay.remove = this.remove;
         return relay; // 返回转发后的消息
     }
 }
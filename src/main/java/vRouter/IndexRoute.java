@@ -0,0 +1,50 @@
+package vRouter;
+
+import kademlia.NodeKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个数据ID的索引在本节点经过的路径：发来索引的节点和索引实际转发（或排队转发）到的下一跳。
+ * 撤销索引的消息沿记录的下一跳转发，而不是按当前的路由表重新选择（路由表在索引之后可能已经变化）。
+ * 撤销消息可能先于索引到达（例如索引在批量消息中排队，或事件驱动时传输延迟不同），
+ * 此时记录发送方，稍后到达的该发送方的索引被丢弃，不再加入过滤器和转发。
+ * 记录不随 DEDUP_TTL 过期，撤销后删除。
+ */
+public class IndexRoute {
+
+    // 发来索引、尚未撤销的节点
+    final List<NodeKey> senders = new ArrayList<>();
+
+    // 索引转发到的下一跳
+    final List<NodeKey> nextHops = new ArrayList<>();
+
+    // 撤销消息先于索引到达的发送方
+    final List<NodeKey> unindexed = new ArrayList<>();
+
+    // 本节点是否为最接近数据ID的节点（索引没有更接近的下一跳）
+    boolean closest;
+
+    // 不重复地加入一个节点
+    static void addOnce(List<NodeKey> list, NodeKey node) {
+        if (!list.contains(node)) {
+            list.add(node);
+        }
+    }
+
+    // 没有任何记录时可以删除
+    boolean isEmpty() {
+        return senders.isEmpty() && nextHops.isEmpty() && unindexed.isEmpty();
+    }
+
+    // 估算的堆内存占用（字节）：对象、HashMap 中的条目和三个列表，节点ID与消息共享，不计入
+    long memoryBytes() {
+        return 24 + 32 + listBytes(senders) + listBytes(nextHops) + listBytes(unindexed);
+    }
+
+    // 空的 ArrayList 不分配数组，加入元素后数组容量至少为 10
+    private static long listBytes(List<NodeKey> list) {
+        return list.isEmpty() ? 24 : 24 + 16 + 4L * Math.max(10, list.size());
+    }
+}
@@ -0,0 +1,143 @@
+package vRouter;
+
+import kademlia.NodeKey;
+
+/**
+ * 基于 long[] 的布隆过滤器，不经过序列化和 MD5。
+ * 数据ID本身就是均匀随机的 160 位数，探测位置按 Kirsch–Mitzenmacher 双重哈希（g_i = h1 + i * h2 的增强形式）由两个 64 位值得到：
+ * BLOOM_HASH 为 key 时直接取数据ID的低 128 位，为 mix 时取数据ID全部位的 64 位混合哈希（数据ID不足 128 位时使用）。
+ * 位数和哈希函数个数与同样参数的 baqend 过滤器相同，baqend 的 BloomFilterMemory 仍作为准确性对比的参照实现。
+ */
+public class LongBloomFilter implements ApproximateMembership {
+
+    // 两个独立混合哈希的种子
+    private static final long SEED1 = 0x9E3779B97F4A7C15L;
+    private static final long SEED2 = 0xC2B2AE3D27D4EB4FL;
+
+    // 过滤器的位
+    final long[] words;
+
+    // 最多容纳的数据ID个数
+    private final int capacity;
+
+    // 已加入的数据ID个数
+    private int count = 0;
+
+    /**
+     * 创建一个空的过滤器
+     *
+     * @param size     位数
+     * @param capacity 最多容纳的数据ID个数
+     */
+    public LongBloomFilter(int size, int capacity) {
+        words = new long[(size + 63) >>> 6];
+        this.capacity = capacity;
+    }
+
+    /**
+     * 所有探测位置是否都为 1
+     *
+     * @param positions 数据ID的探测位置
+     * @return 可能包含时返回 true
+     */
+    public boolean contains(int[] positions) {
+        for (int p : positions) {
+            if ((words[p >>> 6] & (1L << p)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 将所有探测位置置为 1
+     *
+     * @param positions 数据ID的探测位置
+     * @return 已容纳 capacity 个数据ID时返回 false
+     */
+    public boolean add(int[] positions) {
+        if (count >= capacity) return false;
+        for (int p : positions) {
+            words[p >>> 6] |= 1L << p;
+        }
+        count++;
+        return true;
+    }
+
+    /**
+     * 合并另一个同样位数的过滤器（按位或），合并后超出容量时不合并
+     *
+     * @param other 要合并的过滤器
+     * @return 合并时返回 true
+     */
+    public boolean merge(LongBloomFilter other) {
+        if (count + other.count > capacity) return false;
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= other.words[i];
+        }
+        count += other.count;
+        return true;
+    }
+
+    /**
+     * 压缩后的字节数：位数组本身与所有为 1 的位置列表中较小的一个
+     *
+     * @return 字节数
+     */
+    public long encodedBytes() {
+        long ones = 0;
+        for (long w : words) {
+            ones += Long.bitCount(w);
+        }
+        int positionBits = 64 - Long.numberOfLeadingZeros((long) words.length * 64 - 1);
+        return Math.min((long) words.length * 8, (ones * positionBits + 7) / 8);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long bits() {
+        return (long) words.length * 64;
+    }
+
+    /**
+     * 计算数据ID的 k 个探测位置
+     *
+     * @param dataID 数据ID
+     * @param size   过滤器位数
+     * @param hashes 哈希函数个数
+     * @return 探测位置
+     */
+    public static int[] positions(NodeKey dataID, int size, int hashes) {
+        long h1 = hash1(dataID);
+        long h2 = hash2(dataID);
+
+        // 增强双重哈希：步长每次加 i，避免步长相同的两个数据ID共享大部分探测位置（位数较小时普通双重哈希的假阳性率约高 25%）
+        int[] positions = new int[hashes];
+        int a = (int) Long.remainderUnsigned(h1, size);
+        int b = (int) Long.remainderUnsigned(h2, size);
+        for (int i = 0; i < hashes; i++) {
+            positions[i] = a;
+            a += b;
+            if (a >= size) a -= size;
+            b += i;
+            if (b >= size) b -= size;
+        }
+        return positions;
+    }
+
+    // 第一个 64 位哈希值：数据ID的低 64 位或混合哈希
+    static long hash1(NodeKey dataID) {
+        if (VRouterCommonConfig.HASH_KEY.equals(VRouterCommonConfig.BLOOM_HASH)) {
+            return dataID.low64();
+        }
+        return dataID.hash64(SEED1);
+    }
+
+    // 第二个 64 位哈希值：数据ID的第 64~127 位或另一个种子的混合哈希
+    static long hash2(NodeKey dataID) {
+        if (VRouterCommonConfig.HASH_KEY.equals(VRouterCommonConfig.BLOOM_HASH)) {
+            return dataID.high64();
+        }
+        return dataID.hash64(SEED2);
+    }
+}
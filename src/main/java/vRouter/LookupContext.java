@@ -0,0 +1,200 @@
+package vRouter;
+
+import kademlia.NodeKey;
+import peersim.core.CommonState;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次查找的上下文（完成记录）：查找ID、目标数据ID、开始时间，以及找到数据时的跳数和时间。
+ * 查找的所有查找消息（包括转发和反向消息）共享同一个上下文，节点据此判断查找是否已经完成，
+ * 同一数据ID的多次查找或同时进行的查找各自独立，互不影响。
+ * 上下文还记录查找的消息数和仍在传递或处理中的消息数：没有找到数据且消息都已处理完时查找失败。
+ * 传输层（例如 UnreliableTransport）丢弃的消息不会被处理，仍在传递的消息数因此不会归零，
+ * 所以配置 LOOKUP_TIMEOUT 时，开始后超过该模拟时间仍未找到数据的查找也算失败，之后到达的消息（相当于带有截止时间）直接丢弃。
+ * 为了比较查找的取消方式（CANCELLATION），还记录找到数据之后仍然发出的查找消息数（浪费的消息）；
+ * 这只是观察器的统计，节点是否知道查找已完成取决于取消方式。
+ */
+public class LookupContext {
+
+    /**
+     * 查找的结果
+     */
+    public enum Outcome {
+        PENDING,  // 仍有消息在传递或处理中
+        FOUND,    // 已找到数据
+        FAILED    // 所有消息都已处理完或已超时，没有找到数据
+    }
+
+    // 查找ID的生成器
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    // 查找ID
+    public final long queryId;
+
+    // 要查找的数据ID
+    public final NodeKey dataID;
+
+    // 发起查找的节点ID
+    public final NodeKey origin;
+
+    // 查找开始的模拟时间（起始节点开始处理时记录），尚未开始时为 -1
+    private long startTime = -1;
+
+    // 找到数据时的前向跳数、反向跳数和模拟时间
+    private boolean found;
+    private int forwardHops;
+    private int backwardHops;
+    private long endTime = -1;
+
+    // 查找的消息数，以及已发送但尚未处理完的消息数
+    private final AtomicInteger messages = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // 找到数据之后发出的查找消息数
+    private final AtomicInteger wasted = new AtomicInteger();
+
+    /**
+     * 构造函数，分配新的查找ID
+     *
+     * @param dataID 要查找的数据ID
+     * @param origin 发起查找的节点ID
+     */
+    public LookupContext(NodeKey dataID, NodeKey origin) {
+        this.queryId = NEXT_ID.getAndIncrement();
+        this.dataID = dataID;
+        this.origin = origin;
+    }
+
+    // 起始节点开始处理查找时记录开始时间
+    synchronized void start(long time) {
+        if (startTime < 0) {
+            startTime = time;
+        }
+    }
+
+    // 查找开始的模拟时间，尚未开始时为 -1
+    synchronized long startTime() {
+        return startTime;
+    }
+
+    // 发出一条查找消息
+    void sent() {
+        inFlight.incrementAndGet();
+        if (isFound()) {
+            wasted.incrementAndGet();
+        }
+    }
+
+    // 一条查找消息处理完毕（该消息引发的转发和反向消息已经发出）
+    void handled() {
+        messages.incrementAndGet();
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 记录找到数据（只记录第一次）
+     *
+     * @param forwardHops  前向跳数
+     * @param backwardHops 反向跳数
+     * @param time         找到数据的模拟时间
+     * @return 第一次找到时返回 true
+     */
+    synchronized boolean complete(int forwardHops, int backwardHops, long time) {
+        if (found || timedOut(time)) {
+            return false;
+        }
+        this.found = true;
+        this.forwardHops = forwardHops;
+        this.backwardHops = backwardHops;
+        this.endTime = time;
+        return true;
+    }
+
+    /**
+     * 是否已经找到数据
+     *
+     * @return boolean
+     */
+    public synchronized boolean isFound() {
+        return found;
+    }
+
+    /**
+     * 查找的结果
+     *
+     * @return Outcome
+     */
+    public synchronized Outcome outcome() {
+        if (found) {
+            return Outcome.FOUND;
+        }
+        return inFlight.get() == 0 || timedOut(CommonState.getTime()) ? Outcome.FAILED : Outcome.PENDING;
+    }
+
+    // 查找的统计是否已经不再变化：没有消息仍在传递，或已超时（之后到达的消息直接丢弃）
+    synchronized boolean settled(long time) {
+        return inFlight.get() == 0 || timedOut(time);
+    }
+
+    // 查找开始后是否已超过 LOOKUP_TIMEOUT
+    synchronized boolean timedOut(long time) {
+        return VRouterCommonConfig.LOOKUP_TIMEOUT > 0 && startTime >= 0
+                && time - startTime > VRouterCommonConfig.LOOKUP_TIMEOUT;
+    }
+
+    /**
+     * 找到数据时的前向跳数，尚未找到时为 0
+     *
+     * @return int
+     */
+    public synchronized int forwardHops() {
+        return forwardHops;
+    }
+
+    /**
+     * 找到数据时的反向跳数，尚未找到时为 0
+     *
+     * @return int
+     */
+    public synchronized int backwardHops() {
+        return backwardHops;
+    }
+
+    /**
+     * 找到数据的路径长度（前向跳数与反向跳数之和），尚未找到时为 0
+     *
+     * @return int
+     */
+    public synchronized int pathLength() {
+        return forwardHops + backwardHops;
+    }
+
+    /**
+     * 查找的延迟（模拟时间），尚未找到时为 -1
+     *
+     * @return long
+     */
+    public synchronized long latency() {
+        return found ? endTime - startTime : -1;
+    }
+
+    /**
+     * 到目前为止查找的消息数
+     *
+     * @return int
+     */
+    public int messages() {
+        return messages.get();
+    }
+
+    /**
+     * 找到数据之后发出的查找消息数
+     *
+     * @return int
+     */
+    public int wasted() {
+        return wasted.get();
+    }
+}
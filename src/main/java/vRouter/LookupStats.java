@@ -0,0 +1,116 @@
+package vRouter;
+
+import peersim.core.CommonState;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 发起的所有查找的统计：仍在进行的查找保留上下文，统计已经不再变化的查找（没有消息仍在传递，或已超过 LOOKUP_TIMEOUT）
+ * 并入累计值后丢弃，因此长时间的开环负载或轨迹重放中内存和观察器每次输出的开销只与进行中的查找数有关。
+ * 超时后才到达的消息不再计入已丢弃的查找的消息数。
+ * 只由控制器（查询生成器、轨迹重放和观察器）在周期之间访问，不需要同步。
+ */
+public class LookupStats {
+
+    // 仍在进行的查找
+    private final List<LookupContext> active = new ArrayList<>();
+
+    // 已丢弃的查找：按结果的个数、消息数之和、找到数据之后发出的查找消息数之和，以及单次查找的最大消息数
+    private final long[] outcomes = new long[LookupContext.Outcome.values().length];
+    private long messages = 0;
+    private long wasted = 0;
+    private int maxMessages = 0;
+
+    /**
+     * 记录一次新发起的查找
+     *
+     * @param context 查找的上下文
+     */
+    public void add(LookupContext context) {
+        active.add(context);
+    }
+
+    /**
+     * 把统计已经不再变化的查找并入累计值并丢弃，观察器读取统计前调用
+     */
+    public void fold() {
+        long now = CommonState.getTime();
+        for (Iterator<LookupContext> it = active.iterator(); it.hasNext(); ) {
+            LookupContext context = it.next();
+            if (!context.settled(now)) continue;
+            outcomes[context.outcome().ordinal()]++;
+            messages += context.messages();
+            wasted += context.wasted();
+            maxMessages = Math.max(maxMessages, context.messages());
+            it.remove();
+        }
+    }
+
+    /**
+     * 发起的查找总数
+     *
+     * @return long
+     */
+    public long size() {
+        long n = active.size();
+        for (long count : outcomes) {
+            n += count;
+        }
+        return n;
+    }
+
+    /**
+     * 结果为 outcome 的查找数
+     *
+     * @param outcome 查找的结果
+     * @return long
+     */
+    public long count(LookupContext.Outcome outcome) {
+        long n = outcomes[outcome.ordinal()];
+        for (LookupContext context : active) {
+            if (context.outcome() == outcome) n++;
+        }
+        return n;
+    }
+
+    /**
+     * 所有查找的消息数之和
+     *
+     * @return long
+     */
+    public long messages() {
+        long n = messages;
+        for (LookupContext context : active) {
+            n += context.messages();
+        }
+        return n;
+    }
+
+    /**
+     * 所有查找在找到数据之后发出的查找消息数之和
+     *
+     * @return long
+     */
+    public long wasted() {
+        long n = wasted;
+        for (LookupContext context : active) {
+            n += context.wasted();
+        }
+        return n;
+    }
+
+    /**
+     * 单次查找的最大消息数
+     *
+     * @return int
+     */
+    public int maxMessages() {
+        int max = maxMessages;
+        for (LookupContext context : active) {
+            max = Math.max(max, context.messages());
+        }
+        return max;
+    }
+}
@@ -1,5 +1,8 @@
 package vRouter;
 
+import kademlia.NodeDirectory;
+import kademlia.NodeKey;
+import peersim.core.Fallible;
 import peersim.core.GeneralNode;
 import peersim.core.Network;
 import peersim.config.Configuration;
@@ -125,6 +128,15 @@ public class MyNode extends GeneralNode{
     public void setNodeId(BigInteger tmp) {
         nodeId = tmp;
     }
+
+    // 节点从网络中删除（Network.remove 将其置为 DEAD）时从节点目录中注销
+    @Override
+    public void setFailState(int failState) {
+        super.setFailState(failState);
+        if (failState == Fallible.DEAD && nodeId != null) {
+            NodeDirectory.remove(NodeKey.of(nodeId), this);
+        }
+    }
     public void setDataScore(HashMap<BigInteger, Double> dataScore) {
         this.dataScore = dataScore;
     }
@@ -0,0 +1,57 @@
+package vRouter;
+
+/**
+ * 定长位宽的整数数组，元素紧密排列在 long[] 中（一个元素可以跨两个 long），用于存储布谷鸟过滤器和 xor 过滤器的指纹以及计数布隆过滤器的计数器。
+ */
+final class PackedArray {
+
+    // 元素的位
+    private final long[] data;
+
+    // 元素个数
+    private final int length;
+
+    // 每个元素的位数（1~32）
+    private final int width;
+
+    private final long mask;
+
+    PackedArray(int length, int width) {
+        this.length = length;
+        this.width = width;
+        this.mask = (1L << width) - 1;
+        this.data = new long[(int) (((long) length * width + 63) >>> 6)];
+    }
+
+    int get(int i) {
+        long bit = (long) i * width;
+        int word = (int) (bit >>> 6);
+        int offset = (int) bit & 63;
+        long v = data[word] >>> offset;
+        if (offset + width > 64) {
+            v |= data[word + 1] << (64 - offset);
+        }
+        return (int) (v & mask);
+    }
+
+    void set(int i, int value) {
+        long bit = (long) i * width;
+        int word = (int) (bit >>> 6);
+        int offset = (int) bit & 63;
+        long v = value & mask;
+        data[word] = (data[word] & ~(mask << offset)) | (v << offset);
+        if (offset + width > 64) {
+            int high = 64 - offset;
+            data[word + 1] = (data[word + 1] & ~(mask >>> high)) | (v >>> high);
+        }
+    }
+
+    int length() {
+        return length;
+    }
+
+    // 占用的位数
+    long bits() {
+        return (long) data.length * 64;
+    }
+}
@@ -1,8 +1,10 @@
 package vRouter;
 
 import kademlia.KademliaCommonConfig;
+import kademlia.NodeKey;
 import kademlia.UniformRandomGenerator;
 import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
 import peersim.core.CommonState;
 import peersim.core.Control;
 import peersim.core.Network;
@@ -10,32 +12,77 @@ import peersim.core.Node;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 
+/**
+ * 查询生成器。默认每个周期从 availableData 中按存储顺序取出一个数据ID查询，每个数据ID只查询一次。
+ * 配置 rate 后为开环负载：每个周期发起的查找数服从均值为 rate 的泊松分布，与已发起的查找是否完成无关；
+ * 数据ID从所有已存储的数据（catalog）中按 Zipf 分布选取（指数 zipf，排名是数据ID的一个随机排列，与存储时间无关），起始节点均匀或按 Zipf 分布选取（source）。
+ * 查询率可以叠加日周期（period 个周期的正弦波动，幅度 amplitude）和热点突发（每 burst 个周期开始一次，持续 burst_length 个周期，
+ * 查询率乘以 burst_factor，其中 burst_share 比例的查找都查询突发开始时随机选取的一个数据ID）。
+ * 所有随机数都来自 CommonState.r。开环模式下设置 verbose 时每个周期输出发起的查找数和在本周期完成（找到或失败）的查找数，
+ * 查找的总体结果由 VRouterObserver 输出。
+ */
 public class QueryGenerator implements Control {
     // 控制查询生成是否执行的标志
     public static boolean executeFlag = false;
 
     // 存储可用数据的队列
-    public static Queue<BigInteger> availableData = new LinkedList<>();
+    public static Queue<NodeKey> availableData = new LinkedList<>();
 
-    // 存储查询过的数据及其查询次数
-    public static HashMap<BigInteger,Integer> queriedData = new HashMap<>();
+    // 所有已存储且未删除的数据ID，开环负载从中按 Zipf 排名（即在列表中的位置）选取查询的数据
+    public static List<NodeKey> catalog = new ArrayList<>();
 
-    // 用于记录查询路径
-    public static ArrayList<BigInteger> indexPath = new ArrayList<>();
-    public static ArrayList<BigInteger> indexToPath = new ArrayList<>();
-    public static ArrayList<BigInteger> queryPath = new ArrayList<>();
+    // 开环负载时为 true：新的数据ID插入 catalog 的随机位置
+    private static boolean randomRanks = false;
+
+    // 发起的所有查找的统计（只由本控制器和轨迹重放写入，观察器读取）
+    public static final LookupStats lookups = new LookupStats();
+
+    // 用于记录查询路径（并行执行 nextCycle 时由多个线程写入）
+    public static List<NodeKey> indexPath = Collections.synchronizedList(new ArrayList<>());
+    public static List<NodeKey> indexToPath = Collections.synchronizedList(new ArrayList<>());
+    public static List<NodeKey> queryPath = Collections.synchronizedList(new ArrayList<>());
 
     // 调试目标数据，供调试时使用
-    public static final BigInteger DEBUGTARGET = new BigInteger("1114055198376486755617044701041245316474664586947");
+    public static final NodeKey DEBUGTARGET = NodeKey.of(new BigInteger("1114055198376486755617044701041245316474664586947"));
 
     // 协议的参数和ID
     private final static String PAR_PROT = "protocol";
+    private final static String PAR_RATE = "rate";                 // 每个周期的平均查找数（0 表示每个周期查询一个新数据）
+    private final static String PAR_ZIPF = "zipf";                 // 数据流行度的 Zipf 指数（0 表示均匀）
+    private final static String PAR_SOURCE = "source";             // 起始节点分布：uniform 或 zipf
+    private final static String PAR_SOURCE_ZIPF = "source_zipf";   // 起始节点的 Zipf 指数
+    private final static String PAR_PERIOD = "period";             // 日周期的周期数（0 表示不波动）
+    private final static String PAR_AMPLITUDE = "amplitude";       // 日周期的幅度（0 到 1）
+    private final static String PAR_BURST = "burst";               // 突发的间隔周期数（0 表示没有突发）
+    private final static String PAR_BURST_LENGTH = "burst_length"; // 突发持续的周期数
+    private final static String PAR_BURST_FACTOR = "burst_factor"; // 突发期间查询率的倍数
+    private final static String PAR_BURST_SHARE = "burst_share";   // 突发期间查询热点数据的查找比例
+    private final static String PAR_VERBOSE = "verbose";           // 开环模式下是否每个周期输出负载
     private final int pid;
 
+    private final double rate;
+    private final ZipfDistribution popularity;
+    private final ZipfDistribution source;
+    private final int period;
+    private final double amplitude;
+    private final int burst;
+    private final int burstLength;
+    private final double burstFactor;
+    private final double burstShare;
+    private final boolean verbose;
+
+    // 当前突发的热点数据
+    private NodeKey hotData;
+
+    // 开环模式下尚未完成的查找（仅在 verbose 时记录）
+    private final List<LookupContext> pending = new ArrayList<>();
+
     // 随机数生成器，用于生成随机查询数据
     UniformRandomGenerator urg;
 
@@ -43,10 +90,63 @@ public class QueryGenerator implements Control {
     public QueryGenerator(String prefix) {
         pid = Configuration.getPid(prefix + "." + PAR_PROT);  // 从配置文件中获取协议ID
         urg = new UniformRandomGenerator(KademliaCommonConfig.BITS, CommonState.r);  // 初始化随机数生成器
+
+        rate = Configuration.getDouble(prefix + "." + PAR_RATE, 0);
+        if (rate < 0)
+            throw new IllegalParameterException(prefix + "." + PAR_RATE, "must not be negative");
+        double zipf = Configuration.getDouble(prefix + "." + PAR_ZIPF, 1.0);
+        if (zipf < 0)
+            throw new IllegalParameterException(prefix + "." + PAR_ZIPF, "must not be negative");
+        popularity = new ZipfDistribution(zipf);
+        String sourceName = Configuration.getString(prefix + "." + PAR_SOURCE, "uniform");
+        if (sourceName.equals("zipf")) {
+            double sourceZipf = Configuration.getDouble(prefix + "." + PAR_SOURCE_ZIPF, 1.0);
+            if (sourceZipf < 0)
+                throw new IllegalParameterException(prefix + "." + PAR_SOURCE_ZIPF, "must not be negative");
+            source = new ZipfDistribution(sourceZipf);
+        } else if (sourceName.equals("uniform")) {
+            source = null;
+        } else {
+            throw new IllegalParameterException(prefix + "." + PAR_SOURCE, "must be uniform or zipf");
+        }
+        period = Configuration.getInt(prefix + "." + PAR_PERIOD, 0);
+        amplitude = Configuration.getDouble(prefix + "." + PAR_AMPLITUDE, 0);
+        if (period < 0)
+            throw new IllegalParameterException(prefix + "." + PAR_PERIOD, "must not be negative");
+        if (amplitude < 0 || amplitude > 1)
+            throw new IllegalParameterException(prefix + "." + PAR_AMPLITUDE, "must be between 0 and 1");
+        burst = Configuration.getInt(prefix + "." + PAR_BURST, 0);
+        burstLength = Configuration.getInt(prefix + "." + PAR_BURST_LENGTH, 1);
+        burstFactor = Configuration.getDouble(prefix + "." + PAR_BURST_FACTOR, 1.0);
+        burstShare = Configuration.getDouble(prefix + "." + PAR_BURST_SHARE, 0.5);
+        if (burst < 0)
+            throw new IllegalParameterException(prefix + "." + PAR_BURST, "must not be negative");
+        if (burst > 0 && (burstLength < 1 || burstLength > burst))
+            throw new IllegalParameterException(prefix + "." + PAR_BURST_LENGTH, "must be between 1 and " + PAR_BURST);
+        if (burstFactor < 0)
+            throw new IllegalParameterException(prefix + "." + PAR_BURST_FACTOR, "must not be negative");
+        if (burstShare < 0 || burstShare > 1)
+            throw new IllegalParameterException(prefix + "." + PAR_BURST_SHARE, "must be between 0 and 1");
+        verbose = Configuration.getBoolean(prefix + "." + PAR_VERBOSE, false);
+        if (rate > 0) randomRanks = true;
     }
 
     /**
-     * 每次调用该控制器都会生成并发送10个随机的数据查询请求
+     * 把新存储的数据ID加入 catalog。开环负载下插入均匀随机的位置（CommonState.r），catalog 因此始终是数据ID的一个均匀随机排列，
+     * 流行度排名与存储时间（以及索引已经扩散的时间）无关；否则按存储顺序追加，不消耗随机数。
+     *
+     * @param dataID 新存储的数据ID
+     */
+    public static void addToCatalog(NodeKey dataID) {
+        if (randomRanks) {
+            catalog.add(CommonState.r.nextInt(catalog.size() + 1), dataID);
+        } else {
+            catalog.add(dataID);
+        }
+    }
+
+    /**
+     * 每次调用该控制器时发起一个查找（开环模式下发起本周期的所有查找）
      *
      * @return boolean 返回false表示不继续执行
      */
@@ -55,6 +155,9 @@ public class QueryGenerator implements Control {
         if (!executeFlag) {
             return false;
         }
+        if (rate > 0) {
+            return openLoop();
+        }
 
         Node start;
         // 随机选择一个网络中的节点作为查询的起始节点
@@ -63,21 +166,90 @@ public class QueryGenerator implements Control {
         } while ((start == null) || (!start.isUp()));  // 确保选择的节点是存在且处于活动状态的
 
         // 从可用数据队列中取出一个查询项
-        BigInteger query = availableData.poll();
+        NodeKey query = availableData.poll();
         if (query == null) return false;  // 如果没有可用查询数据，则返回
 
-        // 将查询数据加入已查询的数据记录
-        queriedData.put(query, 0);
-        VRouterObserver.dataQueryTraffic.put(query, 0);
-
-        // 获取查询起始节点的协议实例
+        // 获取查询起始节点的协议实例，从该节点发起查找并记录查找的上下文
         VRouterProtocol p = (VRouterProtocol) start.getProtocol(pid);
-
-        // 将查询请求添加到该节点的查找消息队列中
-        p.lookupMessages.add(new VLookupMessage(query, p.nodeId));
+        lookups.add(p.lookup(query));
+        TraceRecorder.record(TraceRecord.Op.LOOKUP, start, query);
 
         return false;  // 返回false，表示不继续执行
     }
 
+    // 开环负载：按本周期的查询率发起查找，并统计上一次执行以来完成的查找
+    private boolean openLoop() {
+        long cycle = VRouterProtocol.currentCycle();
+        int completed = 0, failed = 0;
+        for (Iterator<LookupContext> it = pending.iterator(); it.hasNext(); ) {
+            LookupContext.Outcome outcome = it.next().outcome();
+            if (outcome == LookupContext.Outcome.PENDING) continue;
+            if (outcome == LookupContext.Outcome.FOUND) completed++;
+            else failed++;
+            it.remove();
+        }
+
+        // 本周期的查询率：日周期波动，突发期间乘以突发倍数
+        double lambda = rate;
+        if (period > 0) {
+            lambda *= 1 + amplitude * Math.sin(2 * Math.PI * cycle / period);
+        }
+        boolean bursting = burst > 0 && cycle % burst < burstLength;
+        if (!bursting) {
+            hotData = null;
+        } else if (hotData == null && !catalog.isEmpty()) {
+            hotData = catalog.get(CommonState.r.nextInt(catalog.size()));
+        }
+        if (bursting) {
+            lambda *= burstFactor;
+        }
+
+        int offered = 0;
+        int n = poisson(lambda);
+        for (int i = 0; i < n && !catalog.isEmpty(); i++) {
+            NodeKey query = bursting && hotData != null && CommonState.r.nextDouble() < burstShare
+                    ? hotData : catalog.get(popularity.sample(catalog.size(), CommonState.r));
+            Node start = selectSource();
+            if (start == null) break;
+            LookupContext context = ((VRouterProtocol) start.getProtocol(pid)).lookup(query);
+            lookups.add(context);
+            if (verbose) pending.add(context);
+            TraceRecorder.record(TraceRecord.Op.LOOKUP, start, query);
+            offered++;
+        }
+
+        if (verbose) {
+            System.out.printf("[Cycle=%d] 负载 发起: %d (查询率 %.2f%s), 完成: %d, 失败: %d, 进行中: %d%n",
+                    cycle, offered, lambda, bursting ? ", 突发" : "", completed, failed, pending.size());
+        }
+        return false;
+    }
+
+    // 选取一个在线的起始节点，没有在线节点时返回 null
+    private Node selectSource() {
+        for (int tries = 0; tries < 100 * Network.size(); tries++) {
+            int index = source == null ? CommonState.r.nextInt(Network.size())
+                    : source.sample(Network.size(), CommonState.r);
+            Node node = Network.get(index);
+            if (node != null && node.isUp()) return node;
+        }
+        return null;
+    }
+
+    // 均值为 lambda 的泊松随机数（均值较大时用正态分布近似）
+    private static int poisson(double lambda) {
+        if (lambda <= 0) return 0;
+        if (lambda > 30) {
+            return (int) Math.max(0, Math.round(lambda + Math.sqrt(lambda) * CommonState.r.nextGaussian()));
+        }
+        double limit = Math.exp(-lambda), product = CommonState.r.nextDouble();
+        int k = 0;
+        while (product > limit) {
+            product *= CommonState.r.nextDouble();
+            k++;
+        }
+        return k;
+    }
+
 } // 类结束
 // ___________________________________________________________
@@ -1,12 +1,14 @@
 package vRouter;
 
 import kademlia.KademliaCommonConfig;
+import kademlia.NodeDirectory;
 import kademlia.UniformRandomGenerator;
-import kademlia.Util;
 import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
 import peersim.core.CommonState;
 import peersim.core.Network;
 import peersim.core.Node;
+import peersim.dynamics.NodeInitializer;
 
 import java.math.BigInteger;
 import java.util.Comparator;
@@ -14,26 +16,37 @@ import java.util.Comparator;
 /**
  * 初始化类，执行网络中所有初始节点的k-buckets填充操作。<br>
  * 具体来说，每个节点会被添加到网络中每个其他节点的路由表中。最终，尽管各个节点的路由表中会包含其他节点，
- * 但是因为k-bucket的容量有限，当k-bucket满时，会随机删除其中的一个节点。
+ * 但是因为k-bucket的容量有限，当k-bucket满时，会随机删除其中的一个节点。<br>
+ * 同时也是节点初始化器：网络动态变化（例如 peersim.dynamics.DynamicNetwork 的 init）加入的节点在这里分配节点ID、登记到节点目录，
+ * 并与随机选取的在线节点互相加入路由表；节点被删除时由 MyNode 从节点目录中注销。
  *
  * @author Daniele Furlan, Maurizio Bonani
  * @version 1.0
  */
-public class StateBuilder implements peersim.core.Control {
+public class StateBuilder implements peersim.core.Control, NodeInitializer {
 
 	// 配置参数常量，表示协议名称
 	private static final String PAR_PROT = "protocol";
 
+	// 配置参数常量，表示运行中加入的节点与多少个随机选取的节点交换联系人（默认 50）
+	private static final String PAR_CONTACTS = "contacts";
+
 	// 用于存储协议前缀
 	private String prefix;
 
 	// 存储虚拟路由器协议的ID
 	private int vrouterID;
 
+	// 运行中加入的节点与随机节点交换联系人的次数
+	private final int joinContacts;
+
 	// 构造方法，初始化协议前缀，并从配置文件中获取协议ID
 	public StateBuilder(String prefix) {
 		this.prefix = prefix;
 		vrouterID = Configuration.getPid(this.prefix + "." + PAR_PROT);
+		joinContacts = Configuration.getInt(this.prefix + "." + PAR_CONTACTS, 50);
+		if (joinContacts < 0)
+			throw new IllegalParameterException(this.prefix + "." + PAR_CONTACTS, "must not be negative");
 	}
 
 	// ______________________________________________________________________________________________
@@ -49,14 +62,17 @@ public class StateBuilder implements peersim.core.Control {
 		// 创建一个均匀随机生成器，用于生成随机的节点ID
 		UniformRandomGenerator urg = new UniformRandomGenerator(KademliaCommonConfig.BITS, CommonState.r);
 
-		// 为每个节点生成一个随机的节点ID
+		// 为每个节点生成一个随机的节点ID，并登记到节点目录中
+		NodeDirectory.clear();
 		for (int i = 0; i < Network.size(); ++i) {
 			BigInteger tmp;
 			tmp = urg.generate();  // 生成一个随机的节点ID
 			// 设置当前节点的虚拟路由器ID
 			MyNode node=(MyNode) Network.get(i);
 			node.setNodeId(tmp);
-			((VRouterProtocol) (node.getProtocol(vrouterID))).setNodeId(tmp);
+			VRouterProtocol protocol = (VRouterProtocol) (node.getProtocol(vrouterID));
+			protocol.setNodeId(tmp);
+			NodeDirectory.put(protocol.nodeId, node);
 		}
 
 		// 按节点ID升序对网络中的所有节点进行排序
@@ -66,8 +82,8 @@ public class StateBuilder implements peersim.core.Control {
 				Node n2 = (Node) o2;
 				VRouterProtocol p1 = (VRouterProtocol) (n1.getProtocol(vrouterID));
 				VRouterProtocol p2 = (VRouterProtocol) (n2.getProtocol(vrouterID));
-				// 利用Util.put0方法对节点ID进行比较
-				return Util.put0(p1.nodeId).compareTo(Util.put0(p2.nodeId));
+				// 按节点ID的数值大小进行比较
+				return p1.nodeId.compareTo(p2.nodeId);
 			}
 		});
 
@@ -118,4 +134,28 @@ public class StateBuilder implements peersim.core.Control {
 		System.out.println("网络已初始化");
 		return false;  // 返回false表示该控制器不再继续执行
 	} // 结束 execute()
+
+	// ______________________________________________________________________________________________
+	/**
+	 * 初始化运行中加入网络的节点：分配随机的节点ID并登记到节点目录，与 contacts 个（默认 50）随机选取的在线节点互相加入路由表
+	 *
+	 * @param n 新加入的节点
+	 */
+	public void initialize(Node n) {
+		UniformRandomGenerator urg = new UniformRandomGenerator(KademliaCommonConfig.BITS, CommonState.r);
+		BigInteger tmp = urg.generate();
+		MyNode node = (MyNode) n;
+		node.setNodeId(tmp);
+		VRouterProtocol protocol = (VRouterProtocol) (node.getProtocol(vrouterID));
+		protocol.setNodeId(tmp);
+		NodeDirectory.put(protocol.nodeId, node);
+
+		for (int k = 0; k < joinContacts; k++) {
+			Node other = Network.get(CommonState.r.nextInt(Network.size()));
+			if (other == n || !other.isUp()) continue;
+			VRouterProtocol otherKad = (VRouterProtocol) (other.getProtocol(vrouterID));
+			protocol.routingTable.addNeighbour(otherKad.nodeId);
+			otherKad.routingTable.addNeighbour(protocol.nodeId);
+		}
+	}
 }
\ No newline at end of file
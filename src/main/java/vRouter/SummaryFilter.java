@@ -0,0 +1,84 @@
+package vRouter;
+
+import kademlia.NodeKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 反向路由表的汇总过滤器：记录加入过本节点任何联系人过滤器的所有数据ID（各联系人过滤器的并集），
+ * getMatch 先查询它，不命中时说明没有任何联系人匹配，不再逐个探测联系人的过滤器。
+ * 节点上的数据ID个数事先未知，因此汇总过滤器是可扩展的：第一个 LongBloomFilter 容纳 EXPECTED_ELEMENTS 个数据ID，
+ * 满了之后再创建一个容量和位数都加倍的过滤器，假阳性概率不超过 FALSE_POSITIVE_PROB 乘以过滤器个数。
+ * 汇总过滤器不支持删除，联系人过滤器中的数据ID也无法取回用来重建它，因此只能与只增不减的联系人过滤器一起使用：
+ * 淘汰联系人（MAX_CONTACTS）、丢弃旧的过滤器代（FILTER_GENERATIONS）或删除数据ID（counting、cuckoo）后，
+ * 汇总过滤器会一直增长并且越来越少不命中，VRouterProtocol 的配置检查拒绝这些组合。
+ */
+public class SummaryFilter {
+
+    // 按创建顺序的过滤器，容量依次加倍
+    private final List<LongBloomFilter> filters = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+
+    // 第一个过滤器的容量和位数，以及哈希函数个数
+    private final int capacity;
+    private final int size;
+    private final int hashes;
+
+    /**
+     * 创建一个空的汇总过滤器
+     *
+     * @param capacity 第一个过滤器的容量
+     * @param size     第一个过滤器的位数
+     * @param hashes   哈希函数个数
+     */
+    public SummaryFilter(int capacity, int size, int hashes) {
+        this.capacity = capacity;
+        this.size = size;
+        this.hashes = hashes;
+    }
+
+    /**
+     * 加入一个数据ID（已经可能存在时不再加入）
+     *
+     * @param dataID 数据ID
+     */
+    public void add(NodeKey dataID) {
+        if (contains(dataID)) return;
+        int last = filters.size() - 1;
+        if (last >= 0 && filters.get(last).add(LongBloomFilter.positions(dataID, sizes.get(last), hashes))) {
+            return;
+        }
+        int grown = last + 1;
+        LongBloomFilter filter = new LongBloomFilter(size << grown, capacity << grown);
+        filter.add(LongBloomFilter.positions(dataID, size << grown, hashes));
+        filters.add(filter);
+        sizes.add(size << grown);
+    }
+
+    /**
+     * 数据ID是否可能加入过
+     *
+     * @param dataID 数据ID
+     * @return 可能加入过时返回 true
+     */
+    public boolean contains(NodeKey dataID) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (filters.get(i).contains(LongBloomFilter.positions(dataID, sizes.get(i), hashes))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 占用的位数
+     *
+     * @return long
+     */
+    public long bits() {
+        long bits = 0;
+        for (LongBloomFilter filter : filters) {
+            bits += filter.bits();
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,20 @@
+package vRouter;
+
+import peersim.util.IncrementalStats;
+
+/**
+ * 可以由多个线程同时累加的 IncrementalStats，供并行执行 nextCycle（见 CycleEngine）时的全局统计使用。
+ * 计数、最大值和最小值与累加顺序无关；累加整数值时总和也与顺序无关。
+ */
+public class SynchronizedStats extends IncrementalStats {
+
+    @Override
+    public synchronized void add(double item, int k) {
+        super.add(item, k);
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+    }
+}
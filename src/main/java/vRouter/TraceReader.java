@@ -0,0 +1,106 @@
+package vRouter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 按顺序读取轨迹文件的记录。文件通过内存映射读取，每次只映射一个窗口（最多 WINDOW_RECORDS 条记录），
+ * 读完后再映射下一个窗口，因此读取任意大小的轨迹都不占用堆内存，也不受单个映射 2GB 的限制。
+ */
+public class TraceReader implements Closeable {
+
+    // 每个映射窗口的记录数（约 64MB）
+    private static final int WINDOW_RECORDS = (64 << 20) / TraceRecord.BYTES;
+
+    private final FileChannel channel;
+    private final long records;
+
+    // 当前窗口及其之后的第一条记录的序号
+    private MappedByteBuffer window;
+    private long mapped = 0;
+
+    // 已读出但尚未取走的记录
+    private TraceRecord next;
+    private long read = 0;
+
+    /**
+     * 打开轨迹文件并检查文件头
+     *
+     * @param path 轨迹文件
+     * @throws IOException 文件不能读取或不是轨迹文件时
+     */
+    public TraceReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, TraceRecord.HEADER_BYTES));
+            if (size < TraceRecord.HEADER_BYTES || header.getInt() != TraceRecord.MAGIC) {
+                throw new IOException(path + " is not a trace file");
+            }
+            int version = header.getInt();
+            if (version != TraceRecord.VERSION) {
+                throw new IOException(path + ": unsupported trace version " + version);
+            }
+            long tail = (size - TraceRecord.HEADER_BYTES) % TraceRecord.BYTES;
+            if (tail != 0) {
+                throw new IOException(path + ": truncated trace, last record has " + tail + " of " + TraceRecord.BYTES + " bytes");
+            }
+            records = (size - TraceRecord.HEADER_BYTES) / TraceRecord.BYTES;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 文件中的记录数
+     *
+     * @return long
+     */
+    public long records() {
+        return records;
+    }
+
+    /**
+     * 查看下一条记录但不取走它
+     *
+     * @return 下一条记录，读完时返回 null
+     * @throws IOException 映射失败时
+     */
+    public TraceRecord peek() throws IOException {
+        if (next == null && read < records) {
+            if (window == null || !window.hasRemaining()) {
+                long count = Math.min(WINDOW_RECORDS, records - mapped);
+                window = channel.map(FileChannel.MapMode.READ_ONLY,
+                        TraceRecord.HEADER_BYTES + mapped * TraceRecord.BYTES, count * TraceRecord.BYTES);
+                window.order(ByteOrder.BIG_ENDIAN);
+                mapped += count;
+            }
+            next = TraceRecord.readFrom(window);
+            read++;
+        }
+        return next;
+    }
+
+    /**
+     * 取走下一条记录
+     *
+     * @return 下一条记录，读完时返回 null
+     * @throws IOException 映射失败时
+     */
+    public TraceRecord next() throws IOException {
+        TraceRecord record = peek();
+        next = null;
+        return record;
+    }
+
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
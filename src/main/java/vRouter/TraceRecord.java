@@ -0,0 +1,72 @@
+package vRouter;
+
+import kademlia.NodeKey;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 负载轨迹中的一条记录：在某个周期由某个节点（网络中的下标）存储、查找或删除一个数据ID。
+ * 轨迹文件以 HEADER_BYTES 字节的文件头（魔数和版本号）开始，之后是按周期排序的定长记录，每条 BYTES 字节（大端序）：
+ * 周期（int）、操作类型（byte）、节点下标（int）、数据ID（NodeKey.BYTES 字节）。
+ * 节点用它在 Network 中的下标表示，只在网络不变时稳定：Network.remove 把最后一个节点移到被删除节点的位置，
+ * 因此在节点动态变化（例如 DynamicNetwork）时记录的轨迹，重放时同一个下标可能对应另一个节点。
+ */
+public class TraceRecord {
+
+    /**
+     * 操作类型，编码为其序号
+     */
+    public enum Op {
+        STORE,   // 存储数据并发布索引
+        LOOKUP,  // 查找数据
+        REMOVE   // 删除数据并撤销索引
+    }
+
+    // 文件头：魔数 "VRTR" 和版本号
+    static final int MAGIC = 0x56525452;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+
+    // 每条记录的字节数
+    static final int BYTES = 4 + 1 + 4 + NodeKey.BYTES;
+
+    private static final Op[] OPS = Op.values();
+
+    // 执行操作的周期
+    public final int cycle;
+    // 操作类型
+    public final Op op;
+    // 执行操作的节点在网络中的下标
+    public final int source;
+    // 数据ID
+    public final NodeKey dataID;
+
+    public TraceRecord(int cycle, Op op, int source, NodeKey dataID) {
+        this.cycle = cycle;
+        this.op = op;
+        this.source = source;
+        this.dataID = dataID;
+    }
+
+    // 写入一条记录
+    void writeTo(ByteBuffer buf) {
+        buf.putInt(cycle);
+        buf.put((byte) op.ordinal());
+        buf.putInt(source);
+        dataID.writeTo(buf);
+    }
+
+    // 读取一条记录
+    static TraceRecord readFrom(ByteBuffer buf) {
+        int cycle = buf.getInt();
+        int op = buf.get();
+        if (op < 0 || op >= OPS.length) {
+            throw new IllegalStateException("unknown trace operation " + op);
+        }
+        int source = buf.getInt();
+        if (source < 0) {
+            throw new IllegalStateException("negative node index " + source + " in trace record at cycle " + cycle);
+        }
+        return new TraceRecord(cycle, OPS[op], source, NodeKey.readFrom(buf));
+    }
+}
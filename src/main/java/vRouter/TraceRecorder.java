@@ -0,0 +1,74 @@
+package vRouter;
+
+import kademlia.NodeKey;
+import peersim.config.Configuration;
+import peersim.core.Control;
+import peersim.core.Node;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * 把 DataGenerator 和 QueryGenerator 的存储、删除和查找记录到轨迹文件（格式见 TraceRecord），
+ * 之后可以用 TraceReplay 重放同样的负载，比较不同代码版本的结果。
+ * 每次执行时把缓冲的记录写入文件，模拟结束时关闭文件。
+ */
+public class TraceRecorder implements Control {
+
+    private final static String PAR_FILE = "file"; // 轨迹文件
+
+    // 正在记录的轨迹，未配置记录器时为 null
+    private static TraceWriter writer;
+
+    /**
+     * 构造函数，创建轨迹文件
+     *
+     * @param prefix 配置前缀
+     */
+    public TraceRecorder(String prefix) {
+        String file = Configuration.getString(prefix + "." + PAR_FILE);
+        try {
+            writer = new TraceWriter(Paths.get(file));
+        } catch (IOException e) {
+            throw new RuntimeException("无法创建轨迹文件 " + file, e);
+        }
+        final TraceWriter opened = writer;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                opened.close();
+            } catch (IOException e) {
+                System.err.println("关闭轨迹文件失败: " + e);
+            }
+        }));
+    }
+
+    /**
+     * 记录一次操作（未配置记录器时忽略）
+     *
+     * @param op     操作类型
+     * @param node   执行操作的节点
+     * @param dataID 数据ID
+     */
+    static void record(TraceRecord.Op op, Node node, NodeKey dataID) {
+        if (writer == null) return;
+        try {
+            writer.write(new TraceRecord((int) VRouterProtocol.currentCycle(), op, node.getIndex(), dataID));
+        } catch (IOException e) {
+            throw new RuntimeException("写入轨迹失败", e);
+        }
+    }
+
+    /**
+     * 把本周期记录的操作写入文件
+     *
+     * @return boolean 始终返回 false
+     */
+    public boolean execute() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("写入轨迹失败", e);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package vRouter;
+
+import peersim.config.Configuration;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * 重放轨迹文件（格式见 TraceRecord）中的负载，代替 DataGenerator 和 QueryGenerator：
+ * 每次执行时按记录顺序执行周期不晚于当前周期的所有存储、删除和查找。
+ * 记录中的节点下标超出网络规模或节点不在线时跳过该记录，下标为负数的记录（损坏的轨迹）使重放失败。
+ * 节点下标在节点动态变化时不稳定（见 TraceRecord），记录和重放都应在固定的网络上进行。
+ * 从第一次查找开始到轨迹结束期间设置 QueryGenerator.executeFlag（中心节点任务只在查询阶段执行）。
+ */
+public class TraceReplay implements Control {
+
+    private final static String PAR_PROT = "protocol";
+    private final static String PAR_FILE = "file"; // 轨迹文件
+
+    private final int pid;
+    private final TraceReader reader;
+
+    // 已执行和跳过的记录数
+    private long replayed = 0;
+    private long skipped = 0;
+    private boolean finished = false;
+
+    /**
+     * 构造函数，打开轨迹文件
+     *
+     * @param prefix 配置前缀
+     */
+    public TraceReplay(String prefix) {
+        pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        String file = Configuration.getString(prefix + "." + PAR_FILE);
+        try {
+            reader = new TraceReader(Paths.get(file));
+        } catch (IOException e) {
+            throw new RuntimeException("无法读取轨迹文件 " + file, e);
+        }
+    }
+
+    /**
+     * 执行当前周期及之前的所有记录
+     *
+     * @return boolean 始终返回 false
+     */
+    public boolean execute() {
+        if (finished) return false;
+        long cycle = VRouterProtocol.currentCycle();
+        try {
+            TraceRecord record;
+            while ((record = reader.peek()) != null && record.cycle <= cycle) {
+                reader.next();
+                apply(record);
+            }
+            if (record == null) {
+                finished = true;
+                QueryGenerator.executeFlag = false;
+                reader.close();
+                System.out.println("轨迹重放完成: " + replayed + " 条记录，跳过 " + skipped + " 条");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("读取轨迹失败", e);
+        }
+        return false;
+    }
+
+    // 在记录的节点上执行一条记录
+    private void apply(TraceRecord record) {
+        Node node = record.source < Network.size() ? Network.get(record.source) : null;
+        if (node == null || !node.isUp()) {
+            skipped++;
+            return;
+        }
+        VRouterProtocol p = (VRouterProtocol) node.getProtocol(pid);
+        switch (record.op) {
+            case STORE:
+                VRouterObserver.dataIndexTraffic.put(record.dataID, 0);
+                p.storeData(record.dataID, pid);
+                break;
+            case REMOVE:
+                VRouterObserver.dataIndexTraffic.remove(record.dataID);
+                p.removeData(record.dataID, pid);
+                break;
+            case LOOKUP:
+                QueryGenerator.executeFlag = true;
+                QueryGenerator.lookups.add(p.lookup(record.dataID));
+                break;
+        }
+        replayed++;
+    }
+}
@@ -0,0 +1,76 @@
+package vRouter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 把记录按顺序写入轨迹文件（格式见 TraceRecord），记录先写入缓冲区，缓冲区满或 flush 时写入文件。
+ */
+public class TraceWriter implements Closeable {
+
+    // 缓冲区大小
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+    private long records = 0;
+
+    /**
+     * 创建（或覆盖）轨迹文件并写入文件头
+     *
+     * @param path 轨迹文件
+     * @throws IOException 文件不能写入时
+     */
+    public TraceWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(TraceRecord.MAGIC);
+        buffer.putInt(TraceRecord.VERSION);
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @param record 记录
+     * @throws IOException 写入失败时
+     */
+    public void write(TraceRecord record) throws IOException {
+        if (buffer.remaining() < TraceRecord.BYTES) {
+            flush();
+        }
+        record.writeTo(buffer);
+        records++;
+    }
+
+    /**
+     * 已写入的记录数
+     *
+     * @return long
+     */
+    public long records() {
+        return records;
+    }
+
+    /**
+     * 把缓冲区中的记录写入文件
+     *
+     * @throws IOException 写入失败时
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
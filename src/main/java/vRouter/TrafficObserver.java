@@ -4,8 +4,7 @@ import peersim.core.CommonState;
 import peersim.core.Control;
 import peersim.core.Network;
 
-import java.math.BigInteger;
-import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This class implements a simple observer of search time and hop average in finding a node in the network
@@ -50,7 +49,10 @@ public class TrafficObserver implements Control {
 		//索引构建网络开销评估
 		String trafficI = calculateTraffic(VRouterObserver.dataIndexTraffic);
 		//查询开销评估
-		String trafficQ = calculateTraffic(VRouterObserver.dataQueryTraffic);
+		QueryGenerator.lookups.fold();
+		String trafficQ = String.format("traffic:max=%d,avg=%f",
+				QueryGenerator.lookups.maxMessages(),
+				(float) QueryGenerator.lookups.messages() / QueryGenerator.lookups.size());
 
 		//查询效率评估
 		String queryS = String.format("hops:max=%f,avg=%f;",
@@ -69,7 +71,7 @@ public class TrafficObserver implements Control {
 		return false;
 	}
 
-	public String calculateTraffic(HashMap<BigInteger,Integer> trafficMap){
+	public String calculateTraffic(Map<?,Integer> trafficMap){
 		int max = 0,min = Integer.MAX_VALUE;
 		float sum = 0;
 		for (Integer i:trafficMap.values()) {
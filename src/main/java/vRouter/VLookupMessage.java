@@ -1,6 +1,6 @@
 package vRouter;
 
-import java.math.BigInteger;
+import kademlia.NodeKey;
 
 /**
  * 表示一个查找消息 (Lookup Message) 的类，用于在节点之间传递查找请求。
@@ -8,10 +8,10 @@ import java.math.BigInteger;
 public class VLookupMessage {
 
     // 要查找的数据 ID
-    public BigInteger dataID;
+    public NodeKey dataID;
 
     // 消息的来源节点 ID
-    public BigInteger from;
+    public NodeKey from;
 
     // 向前查找的跳数统计
     public int forwardHops;
@@ -22,14 +22,21 @@ public class VLookupMessage {
     // 消息方向：true 表示向前；false 表示向后
     public boolean direction;
 
+    // 本消息（包括由它引发的所有副本）还可以发出的查找消息数，仅在取消方式为 budget 时使用
+    public int budget;
+
+    // 查找的上下文，同一次查找的所有消息共享
+    public final LookupContext context;
+
     /**
      * 构造函数，初始化一个查找消息，设置初始方向为向前。
      *
-     * @param t    要查找的数据 ID
-     * @param from 消息的来源节点 ID
+     * @param context 查找的上下文（包含要查找的数据 ID）
+     * @param from    消息的来源节点 ID
      */
-    public VLookupMessage(BigInteger t, BigInteger from) {
-        dataID = t;                 // 要查找的数据 ID
+    public VLookupMessage(LookupContext context, NodeKey from) {
+        this.context = context;     // 查找的上下文
+        dataID = context.dataID;    // 要查找的数据 ID
         this.from = from;           // 来源节点 ID
         forwardHops = 1;            // 初始向前跳数设为 1
         backwardHops = 0;           // 初始向后跳数设为 0
@@ -42,8 +49,8 @@ public class VLookupMessage {
      * @param from 当前发送消息的节点 ID
      * @return 新的向前查找消息
      */
-    public VLookupMessage forward(BigInteger from) {
-        VLookupMessage msg = new VLookupMessage(this.dataID, from);
+    public VLookupMessage forward(NodeKey from) {
+        VLookupMessage msg = new VLookupMessage(this.context, from);
         msg.forwardHops = this.forwardHops + 1;  // 跳数加 1
         return msg;
     }
@@ -54,8 +61,8 @@ public class VLookupMessage {
      * @param from 当前发送消息的节点 ID
      * @return 新的向后查找消息
      */
-    public VLookupMessage backward(BigInteger from) {
-        VLookupMessage msg = new VLookupMessage(this.dataID, from);
+    public VLookupMessage backward(NodeKey from) {
+        VLookupMessage msg = new VLookupMessage(this.context, from);
         msg.backwardHops = this.backwardHops + 1;  // 跳数加 1
         msg.direction = false;                     // 设置方向为向后
         return msg;
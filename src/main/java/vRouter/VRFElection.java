@@ -4,7 +4,9 @@ import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import peersim.core.Network;
+
+import kademlia.NodeDirectory;
+import kademlia.NodeKey;
 
 public class VRFElection {
 
@@ -95,12 +97,10 @@ public class VRFElection {
             }
         }
 
-        // 返回新的中心节点
-        for (int i = 0; i < Network.size(); i++) {
-            MyNode node = (MyNode) Network.get(i);
-            if (node.nodeId.equals(selectedCandidate)) {
-                return node;
-            }
+        // 返回新的中心节点（通过节点目录查找）
+        MyNode node = (MyNode) NodeDirectory.get(NodeKey.of(selectedCandidate));
+        if (node != null) {
+            return node;
         }
         throw new RuntimeException("未找到选定的中心节点");
     }
@@ -7,6 +7,37 @@ public class VRouterCommonConfig {
     // Bloom Filter Configuration
     public static int EXPECTED_ELEMENTS = 1000;  // 布隆过滤器预期元素数
     public static double FALSE_POSITIVE_PROB = 0.01;  // 布隆过滤器假阳性概率
+    public static final String FILTER_BAQEND = "baqend";  // baqend 的 BloomFilterMemory（MD5 哈希，参照实现）
+    public static final String FILTER_NATIVE = "native";  // 基于 long[] 的 LongBloomFilter
+    public static final String FILTER_BLOCKED = "blocked";  // 分块的 BlockedBloomFilter，探测位置集中在一个缓存行内
+    public static final String FILTER_COUNTING = "counting";  // 计数布隆过滤器 CountingBloomFilter（4 位计数器），可以删除
+    public static final String FILTER_CUCKOO = "cuckoo";  // 布谷鸟过滤器 CuckooFilter，可以删除
+    public static final String FILTER_XOR = "xor";  // 静态的 xor 过滤器 XorFilter，收满后一次构造
+    public static String BLOOM_FILTER = FILTER_BAQEND;  // 反向路由表使用的过滤器实现
+    public static final String HASH_MIX = "mix";  // 由数据ID全部位的 64 位混合哈希得到探测位置
+    public static final String HASH_KEY = "key";  // 直接使用数据ID的低 128 位（要求数据ID均匀随机且不少于 128 位）
+    public static String BLOOM_HASH = HASH_MIX;  // baqend 以外的过滤器的哈希来源
+    public static int BLOCK_BITS = 512;  // BlockedBloomFilter 每个块的位数（2 的幂，512 位即 64 字节）
+    public static boolean BIT_SLICED_INDEX = false;  // 反向路由表匹配是否使用位切片索引（否则逐个过滤器线性扫描）
+    public static int MAX_CONTACTS = 0;  // 反向路由表最多保留的联系人数（0 表示不限制）
+    public static final String EVICT_LRU = "lru";  // 淘汰最久未使用的联系人
+    public static final String EVICT_HITS = "hits";  // 淘汰 getMatch 命中率最低的联系人
+    public static final String EVICT_SCORE = "score";  // 淘汰命中数据的活跃度评分（最新区块的 dataScores）之和最低的联系人
+    public static String CONTACT_EVICTION = EVICT_LRU;  // 联系人数达到上限时的淘汰策略
+    public static boolean BATCH_INDEX = false;  // 是否把一个周期内发往同一下一跳的索引合并为一条批量索引消息
+    public static boolean INDEX_DIGEST = false;  // 是否每 DIGEST_CYCLES 个周期向每个下一跳发送一次增量过滤器摘要（需要 native 或 blocked 过滤器）
+    public static int DIGEST_CYCLES = 5;  // 摘要发送的间隔（周期数）
+    public static int ATTENUATED_LAYERS = 0;  // 每个联系人的过滤器按距离分的层数（0 表示不分层），反向查询只发给匹配层最浅的联系人
+    public static int DEDUP_TTL = 0;  // handledQuery 和 handledIndex 中的记录在多少个周期后过期（0 表示不过期），撤销索引使用的 indexRoutes 不过期
+    public static boolean SUMMARY_FILTER = false;  // 反向路由表匹配前是否先查询所有联系人过滤器的汇总过滤器（不能与 MAX_CONTACTS、FILTER_GENERATIONS 或可删除的过滤器同时使用）
+    public static int FILTER_GENERATIONS = 0;  // 每个联系人最多保留的过滤器代数（0 表示不分代，过滤器只增不减）
+    public static int GENERATION_CYCLES = 20;  // 每一代过滤器的时间窗口（周期数），也是存储节点重新发布索引的间隔
+    public static final String CANCEL_ORACLE = "oracle";  // 节点处理查找消息前检查全局的查找上下文是否已找到数据（分布式环境中无法实现）
+    public static final String CANCEL_NONE = "none";  // 不取消，查找消息一直扩散到没有更近的节点为止
+    public static final String CANCEL_BUDGET = "budget";  // 每次查找携带消息预算，节点把剩余的预算分给发出的副本，预算用完的副本不再转发
+    public static String CANCELLATION = CANCEL_ORACLE;  // 找到数据后如何停止其它查找消息
+    public static int LOOKUP_BUDGET = 16;  // 取消方式为 budget 时每次查找最多发出的查找消息数（不含起始节点的第一条消息）
+    public static long LOOKUP_TIMEOUT = 0;  // 查找开始后多少模拟时间内没有找到数据即失败（0 表示不限，只在所有消息处理完时失败）
 
     /**
      * 提供当前配置的简要信息
@@ -15,9 +46,26 @@ public class VRouterCommonConfig {
      */
     public static String info() {
         return String.format(
-                "[EXPECTED_ELEMENTS=%d][FALSE_POSITIVE_PROB=%f]",
+                "[EXPECTED_ELEMENTS=%d][FALSE_POSITIVE_PROB=%f][BLOOM_FILTER=%s][BLOOM_HASH=%s][BLOCK_BITS=%d][BIT_SLICED_INDEX=%b][MAX_CONTACTS=%d][CONTACT_EVICTION=%s][BATCH_INDEX=%b][INDEX_DIGEST=%b][DIGEST_CYCLES=%d][ATTENUATED_LAYERS=%d][DEDUP_TTL=%d][SUMMARY_FILTER=%b][FILTER_GENERATIONS=%d][GENERATION_CYCLES=%d][CANCELLATION=%s][LOOKUP_BUDGET=%d][LOOKUP_TIMEOUT=%d]",
                 EXPECTED_ELEMENTS,
-                FALSE_POSITIVE_PROB
+                FALSE_POSITIVE_PROB,
+                BLOOM_FILTER,
+                BLOOM_HASH,
+                BLOCK_BITS,
+                BIT_SLICED_INDEX,
+                MAX_CONTACTS,
+                CONTACT_EVICTION,
+                BATCH_INDEX,
+                INDEX_DIGEST,
+                DIGEST_CYCLES,
+                ATTENUATED_LAYERS,
+                DEDUP_TTL,
+                SUMMARY_FILTER,
+                FILTER_GENERATIONS,
+                GENERATION_CYCLES,
+                CANCELLATION,
+                LOOKUP_BUDGET,
+                LOOKUP_TIMEOUT
         );
     }
 }
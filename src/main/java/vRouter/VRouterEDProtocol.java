@@ -0,0 +1,65 @@
+package vRouter;
+
+import kademlia.KademliaCommonConfig;
+import kademlia.NodeDirectory;
+import peersim.config.Configuration;
+import peersim.config.FastConfig;
+import peersim.core.Node;
+import peersim.edsim.EDProtocol;
+import peersim.transport.Transport;
+
+import java.util.Queue;
+
+/**
+ * VRouterProtocol 的事件驱动版本：节点之间的查找、索引和批量索引消息经由配置的传输层（protocol.vRouter.transport，
+ * 例如 UniformRandomTransport 或 UnreliableTransport）发送，到达时立即处理，因此每一跳的耗时是传输层的延迟而不是一个周期，
+ * VRouterObserver 输出的查找延迟即为模拟时间。
+ * 合并索引的发送、重新发布索引和中心节点任务等周期性工作仍由 nextCycle 完成，需要由 peersim.edsim.CDScheduler
+ * 每 protocol.vRouter.step 个时间单位调度一次；过滤器分代、摘要间隔等按周期配置的参数以 step 为一个周期。
+ * 数据生成和查询生成控制器放入消息队列的消息在节点的下一次 nextCycle 中处理。
+ */
+public class VRouterEDProtocol extends VRouterProtocol implements EDProtocol {
+
+	private final static String PAR_STEP = "step";  // nextCycle 的调度间隔（CDScheduler 的参数）
+
+	/**
+	 * Used only by the initializer when creating the prototype. Every other instance call CLONE to create the new object.
+	 *
+	 * @param prefix
+	 *            String
+	 */
+	public VRouterEDProtocol(String prefix) {
+		super(prefix);
+		KademliaCommonConfig.CYCLE_LENGTH = Configuration.getLong(prefix + "." + PAR_STEP);  // 事件驱动时一个周期为 nextCycle 的调度间隔
+	}
+
+	public Object clone() {
+		return new VRouterEDProtocol(VRouterProtocol.prefix);
+	}
+
+	/**
+	 * 处理经由传输层到达的消息
+	 *
+	 * @param node The node receiving the message.
+	 * @param protocolID The protocol ID.
+	 * @param event The message.
+	 */
+	@Override
+	public void processEvent(Node node, int protocolID, Object event) {
+		if (event instanceof VLookupMessage) {
+			receiveLookup((VLookupMessage) event, protocolID);
+		} else if (event instanceof IndexMessage) {
+			receiveIndex((IndexMessage) event, protocolID);
+		} else if (event instanceof IndexBatchMessage) {
+			receiveIndexBatch((IndexBatchMessage) event, protocolID);
+		}
+	}
+
+	// 经由传输层发送，不放入目标节点的消息队列
+	@Override
+	<T> void send(Node target, Queue<T> inbox, T msg, int protocolID) {
+		countSent(msg);
+		Transport transport = (Transport) target.getProtocol(FastConfig.getTransport(protocolID));
+		transport.send(NodeDirectory.get(nodeId), target, msg, protocolID);
+	}
+}
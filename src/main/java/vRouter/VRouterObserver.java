@@ -1,14 +1,24 @@
 package vRouter;
 
 import com.google.gson.Gson;
+import kademlia.KBucket;
+import kademlia.KademliaCommonConfig;
+import kademlia.NodeDirectory;
+import kademlia.NodeKey;
+import kademlia.RoutingTable;
+import orestes.bloomfilter.FilterBuilder;
 import peersim.config.Configuration;
 import peersim.core.CommonState;
 import peersim.core.Control;
 import peersim.core.Network;
+import peersim.core.Node;
 import peersim.util.IncrementalStats;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Random;
 
 /**
  * 该类实现了一个简单的观察器，用于观察网络中查找节点时的时间和跳数平均值
@@ -21,12 +31,12 @@ public class VRouterObserver implements Control {
 	/**
 	 * 记录每次成功查找消息的跳数（转发跳数）
 	 */
-	public static IncrementalStats successLookupForwardHop = new IncrementalStats();
+	public static IncrementalStats successLookupForwardHop = new SynchronizedStats();
 
 	/**
 	 * 记录每次成功查找消息的跳数（反向跳数）
 	 */
-	public static IncrementalStats successLookupBackwardHop = new IncrementalStats();
+	public static IncrementalStats successLookupBackwardHop = new SynchronizedStats();
 
 	/**
 	 * 记录每次查找消息的跳数（目前未使用）
@@ -38,48 +48,122 @@ public class VRouterObserver implements Control {
 	/**
 	 * 记录每次成功查找消息的总跳数
 	 */
-	public static IncrementalStats totalSuccessHops = new IncrementalStats();
+	public static IncrementalStats totalSuccessHops = new SynchronizedStats();
 
 	/**
 	 * 记录失败查找消息的跳数
 	 */
-	public static IncrementalStats failedBackwardLookupHop = new IncrementalStats();
+	public static IncrementalStats failedBackwardLookupHop = new SynchronizedStats();
+
+	/**
+	 * 记录发出的反向查找消息数
+	 */
+	public static IncrementalStats backwardLookupMessages = new SynchronizedStats();
 
 	/**
 	 * 记录索引消息的跳数
 	 */
-	public static IncrementalStats indexHop = new IncrementalStats();
+	public static IncrementalStats indexHop = new SynchronizedStats();
+
+	/**
+	 * 记录撤销索引消息的跳数
+	 */
+	public static IncrementalStats unindexHop = new SynchronizedStats();
+
+	/**
+	 * 记录从反向路由表过滤器中删除的数据ID记录
+	 */
+	public static IncrementalStats removedIndex = new SynchronizedStats();
+
+	/**
+	 * 记录因分代过期而丢弃的过滤器
+	 */
+	public static IncrementalStats droppedFilterCount = new SynchronizedStats();
+
+	/**
+	 * 记录分代时重新发布的索引（每个存储数据每个时间窗口一次）
+	 */
+	public static IncrementalStats reannouncedIndex = new SynchronizedStats();
+
+	/**
+	 * 记录收到的索引消息条数（批量索引消息计一条）及其字节数（估算），以及每个节点每个周期处理索引的耗时（纳秒）
+	 */
+	public static IncrementalStats indexMessageCount = new SynchronizedStats();
+	public static IncrementalStats indexBytes = new SynchronizedStats();
+	public static IncrementalStats indexNanos = new SynchronizedStats();
+
+	/**
+	 * 记录联系人数达到上限时淘汰的反向路由表联系人
+	 */
+	public static IncrementalStats evictedContacts = new SynchronizedStats();
+
+	/**
+	 * 记录反向路由表汇总过滤器的命中、不命中（跳过逐个联系人的探测）次数
+	 */
+	public static IncrementalStats summaryHit = new SynchronizedStats();
+	public static IncrementalStats summaryMiss = new SynchronizedStats();
+
+	/**
+	 * 记录每次查询汇总过滤器的耗时，以及命中后逐个联系人探测的耗时（纳秒）
+	 */
+	public static IncrementalStats summaryNanos = new SynchronizedStats();
+	public static IncrementalStats scanNanos = new SynchronizedStats();
 
 	/**
 	 * 记录Bloom Filter消息的跳数
 	 */
-	public static IncrementalStats bloomFilterCount = new IncrementalStats();
+	public static IncrementalStats bloomFilterCount = new SynchronizedStats();
 
 	// 存储每个数据索引的流量统计
-	public static HashMap<BigInteger,Integer> dataIndexTraffic = new HashMap<>();
+	public static HashMap<NodeKey,Integer> dataIndexTraffic = new HashMap<>();
 
-	// 存储每个数据查询的流量统计
-	public static HashMap<BigInteger,Integer> dataQueryTraffic = new HashMap<>();
+	// 每次成功查找的延迟（模拟时间：周期驱动时为周期数，事件驱动时为传输层的时间单位），用于计算百分位数
+	private static final ArrayList<Long> lookupLatencies = new ArrayList<>();
 
 	/** 协议参数，用于配置和观察 */
 	private static final String PAR_PROT = "protocol";
 
+	/** 估计假阳性率时探测的数据ID个数，默认为 0（不探测：每次输出都要把每个过滤器探测一遍，开销较大） */
+	private static final String PAR_PROBES = "probes";
+
+	/** 估计假阳性率时使用的随机数种子 */
+	private static final long FPR_PROBE_SEED = 1234567890L;
+
 	/** 协议ID */
 	private int pid;
 
 	/** 输出时使用的前缀 */
 	private String prefix;
 
+	/** 估计假阳性率时探测的数据ID个数 */
+	private final int probeCount;
+
 	// 新增统计节点活跃度评分的统计数据
-	public static IncrementalStats activityScoreStats = new IncrementalStats();
+	public static IncrementalStats activityScoreStats = new SynchronizedStats();
 
 	// 记录中心节点切换的次数
 	private static int centralNodeSwitchCount = 0;
 
+	/**
+	 * 记录一次成功查找的延迟
+	 *
+	 * @param latency 查找开始到找到数据的模拟时间
+	 */
+	public static synchronized void addLookupLatency(long latency) {
+		lookupLatencies.add(latency);
+	}
+
+	// 已排序延迟的 p 百分位数（最近秩法）
+	private static long percentile(ArrayList<Long> sorted, double p) {
+		int rank = (int) Math.ceil(p / 100 * sorted.size());
+		return sorted.get(Math.max(rank, 1) - 1);
+	}
+
 	// 构造方法，初始化协议前缀并通过配置文件获取协议ID
 	public VRouterObserver(String prefix) {
 		this.prefix = prefix;
 		pid = Configuration.getPid(prefix + "." + PAR_PROT);
+		probeCount = Configuration.getInt(prefix + "." + PAR_PROBES, 0);
 	}
 
 	/**
@@ -124,6 +208,225 @@ public class VRouterObserver implements Control {
 		// 输出查询效率统计信息
 		System.err.println(queryS);
 
+		// 输出每个节点路由表的内存占用（估算值）
+		IncrementalStats tableBytes = new IncrementalStats();
+		IncrementalStats tableBuckets = new IncrementalStats();
+		IncrementalStats tableContacts = new IncrementalStats();
+		IncrementalStats deadContacts = new IncrementalStats();
+		for (int i = 0; i < Network.size(); i++) {
+			RoutingTable routingTable = ((VRouterProtocol) Network.get(i).getProtocol(pid)).routingTable;
+			tableBytes.add(routingTable.memoryBytes());
+			tableBuckets.add(routingTable.bucketCount());
+			tableContacts.add(routingTable.size());
+			int dead = 0;
+			for (KBucket bucket : routingTable.k_buckets) {
+				if (bucket == null) continue;
+				for (int b = 0; b < bucket.size(); b++) {
+					Node contact = NodeDirectory.get(bucket.get(b));
+					if (contact == null || !contact.isUp()) dead++;
+				}
+			}
+			deadContacts.add(dead);
+		}
+		System.err.println(String.format("[Time=%d] 每节点路由表内存(字节) 平均: %f, 最大: %f; 已分配k-bucket数 平均: %f; 联系人数 平均: %f, 其中已离开网络: %f",
+				CommonState.getTime(),
+				tableBytes.getAverage(),
+				tableBytes.getMax(),
+				tableBuckets.getAverage(),
+				tableContacts.getAverage(),
+				deadContacts.getAverage()
+		));
+
+		// 输出每个节点去重表的记录数和内存占用（估算值），以及不过期的索引路径记录（撤销索引时使用）
+		IncrementalStats dedupBytes = new IncrementalStats();
+		IncrementalStats dedupEntries = new IncrementalStats();
+		IncrementalStats routeBytes = new IncrementalStats();
+		IncrementalStats routeEntries = new IncrementalStats();
+		for (int i = 0; i < Network.size(); i++) {
+			VRouterProtocol protocol = (VRouterProtocol) Network.get(i).getProtocol(pid);
+			dedupBytes.add(protocol.handledQuery.memoryBytes() + protocol.handledIndex.memoryBytes());
+			dedupEntries.add(protocol.handledQuery.size() + protocol.handledIndex.size());
+			long bytes = 0;
+			for (IndexRoute route : protocol.indexRoutes.values())
+				bytes += route.memoryBytes();
+			routeBytes.add(bytes);
+			routeEntries.add(protocol.indexRoutes.size());
+		}
+		System.err.println(String.format("[Time=%d] 每节点去重表(过期%d周期) 记录数 平均: %f, 最大: %f; 内存(字节) 平均: %f, 最大: %f; 索引路径(不过期) 记录数 平均: %f, 内存(字节) 平均: %f",
+				CommonState.getTime(),
+				VRouterCommonConfig.DEDUP_TTL,
+				dedupEntries.getAverage(),
+				dedupEntries.getMax(),
+				dedupBytes.getAverage(),
+				dedupBytes.getMax(),
+				routeEntries.getAverage(),
+				routeBytes.getAverage()
+		));
+
+		// 输出反向路由表布隆过滤器的假阳性率（配置了 probes 时）：用不在表中的随机数据ID探测（独立的随机数序列，不影响仿真），
+		// 与按实际元素个数计算的经典过滤器、分块过滤器理论值并列
+		Random random = new Random(FPR_PROBE_SEED);
+		NodeKey[] probes = new NodeKey[probeCount];
+		for (int i = 0; i < probes.length; i++)
+			probes[i] = NodeKey.of(new BigInteger(KademliaCommonConfig.BITS, random));
+		IncrementalStats measuredFpr = new IncrementalStats();
+		IncrementalStats classicFpr = new IncrementalStats();
+		IncrementalStats blockedFpr = new IncrementalStats();
+		IncrementalStats cacheLines = new IncrementalStats();
+		IncrementalStats probeNanos = new IncrementalStats();
+		IncrementalStats contactFilters = new IncrementalStats();
+		IncrementalStats nodeContacts = new IncrementalStats();
+		IncrementalStats nodeFilterBits = new IncrementalStats();
+		long filterBits = 0;
+		long filterKeys = 0;
+		long exactBits = 0;
+		long exactKeys = 0;
+		for (int i = 0; i < Network.size(); i++) {
+			BloomFilterRoutingTable bfRoutingTable = ((VRouterProtocol) Network.get(i).getProtocol(pid)).bfRoutingTable;
+			if (probeCount > 0)
+				bfRoutingTable.falsePositiveStats(probes, measuredFpr, classicFpr, blockedFpr, cacheLines, probeNanos);
+			bfRoutingTable.contactFilterCounts(contactFilters);
+			nodeContacts.add(bfRoutingTable.contactCount());
+			nodeFilterBits.add(bfRoutingTable.filterBits());
+			filterBits += bfRoutingTable.filterBits(false);
+			filterKeys += bfRoutingTable.filterKeys(false);
+			exactBits += bfRoutingTable.filterBits(true);
+			exactKeys += bfRoutingTable.filterKeys(true);
+		}
+		FilterBuilder config = ContactWithBloomFilter.filterConfig();
+		if (probeCount > 0) {
+			System.err.println(String.format("[Time=%d] BF假阳性率(%s) 实测: %f, 经典理论值(%d位): %f, 分块理论值(%d位, 块%d位): %f; 每次探测访问缓存行数: %f",
+					CommonState.getTime(),
+					VRouterCommonConfig.BLOOM_FILTER,
+					measuredFpr.getAverage(),
+					config.size(),
+					classicFpr.getAverage(),
+					BlockedBloomFilter.size(config.expectedElements(), config.falsePositiveProbability(), config.hashes(), VRouterCommonConfig.BLOCK_BITS),
+					VRouterCommonConfig.BLOCK_BITS,
+					blockedFpr.getAverage(),
+					cacheLines.getAverage()
+			));
+		}
+		// 仍为精确集合的过滤器（如未收满的 xor 过滤器）没有误报，单独统计，不计入每个数据ID位数和假阳性率
+		System.err.println(String.format("[Time=%d] 反向路由表过滤器(%s) 每个数据ID位数: %f, 实测假阳性率(探测%d个): %f, 每次探测耗时(纳秒): %f; 尚未构造(精确集合)的过滤器 数据ID数: %d, 每个数据ID位数: %f",
+				CommonState.getTime(),
+				VRouterCommonConfig.BLOOM_FILTER,
+				filterKeys == 0 ? 0 : (double) filterBits / filterKeys,
+				probeCount,
+				measuredFpr.getAverage(),
+				probeNanos.getAverage(),
+				exactKeys,
+				exactKeys == 0 ? 0 : (double) exactBits / exactKeys
+		));
+
+		// 输出每个联系人的过滤器个数（每次反向匹配要探测的过滤器数）和每节点过滤器内存，分代时还有丢弃的过滤器数和重新发布的索引数
+		System.err.println(String.format("[Time=%d] 每个联系人过滤器数 平均: %f, 最大: %f; 每节点过滤器位数 平均: %f, 最大: %f; 分代(%d代, %d周期) 丢弃过滤器数: %d, 重新发布索引数: %d",
+				CommonState.getTime(),
+				contactFilters.getAverage(),
+				contactFilters.getMax(),
+				nodeFilterBits.getAverage(),
+				nodeFilterBits.getMax(),
+				VRouterCommonConfig.FILTER_GENERATIONS,
+				VRouterCommonConfig.GENERATION_CYCLES,
+				droppedFilterCount.getN(),
+				reannouncedIndex.getN()
+		));
+
+		// 输出索引的开销：消息条数、按数据ID计的消息数（与 dataIndexTraffic 相同）和处理耗时
+		long indexItems = 0;
+		for (Integer msgs : dataIndexTraffic.values())
+			indexItems += msgs;
+		String indexMode = VRouterCommonConfig.INDEX_DIGEST ? "摘要" : VRouterCommonConfig.BATCH_INDEX ? "批量" : "逐条";
+		System.err.println(String.format("[Time=%d] 索引消息(%s) 条数: %d, 数据ID次数: %d, 每个数据ID的消息数: %f, 字节数: %f; 索引处理耗时(毫秒): %f",
+				CommonState.getTime(),
+				indexMode,
+				indexMessageCount.getN(),
+				indexItems,
+				(double) indexMessageCount.getN() / indexItems,
+				indexBytes.getSum() / indexItems,
+				indexNanos.getSum() / 1e6
+		));
+
+		// 输出反向路由表联系人数与查询成功率，比较限制联系人数（节省内存）对查询的影响
+		LookupStats stats = QueryGenerator.lookups;
+		stats.fold();
+		System.err.println(String.format("[Time=%d] 反向路由表联系人数(上限%d, %s) 平均: %f, 最大: %f; 淘汰联系人数: %d; 查询成功: %d/%d, 失败: %d, 未完成: %d",
+				CommonState.getTime(),
+				VRouterCommonConfig.MAX_CONTACTS,
+				VRouterCommonConfig.CONTACT_EVICTION,
+				nodeContacts.getAverage(),
+				nodeContacts.getMax(),
+				evictedContacts.getN(),
+				stats.count(LookupContext.Outcome.FOUND),
+				stats.size(),
+				stats.count(LookupContext.Outcome.FAILED),
+				stats.count(LookupContext.Outcome.PENDING)
+		));
+
+		// 输出每次查找浪费的消息数（找到数据之后仍然发出的查找消息），比较不同的取消方式
+		long queries = Math.max(1, stats.size());
+		System.err.println(String.format("[Time=%d] 查找取消(%s) 每次查找 查找消息: %f, 找到后发出的查找消息: %f",
+				CommonState.getTime(),
+				VRouterCommonConfig.CANCELLATION,
+				(double) stats.messages() / queries,
+				(double) stats.wasted() / queries
+		));
+
+		// 输出成功查找的延迟百分位数
+		ArrayList<Long> latencies;
+		synchronized (VRouterObserver.class) {
+			latencies = new ArrayList<>(lookupLatencies);
+		}
+		if (!latencies.isEmpty()) {
+			Collections.sort(latencies);
+			System.err.println(String.format("[Time=%d] 查找延迟(%d次) p50: %d, p90: %d, p99: %d, 最大: %d",
+					CommonState.getTime(),
+					latencies.size(),
+					percentile(latencies, 50),
+					percentile(latencies, 90),
+					percentile(latencies, 99),
+					latencies.get(latencies.size() - 1)
+			));
+		}
+
+		// 输出反向查找的消息数，比较过滤器分层（只发给最浅的匹配联系人）与发给所有匹配联系人
+		System.err.println(String.format("[Time=%d] 反向查找(过滤器%d层) 消息数: %d, 每次成功查询的反向消息数: %f; 成功查询的反向跳数 最大: %f, 平均: %f",
+				CommonState.getTime(),
+				VRouterCommonConfig.ATTENUATED_LAYERS,
+				backwardLookupMessages.getN(),
+				totalSuccessHops.getN() == 0 ? 0.0 : (double) backwardLookupMessages.getN() / totalSuccessHops.getN(),
+				successLookupBackwardHop.getMax(),
+				successLookupBackwardHop.getAverage()
+		));
+
+		// 输出汇总过滤器的命中率和节省的时间：每次不命中省去一次逐个联系人的探测（按命中时的平均探测耗时估计）
+		if (VRouterCommonConfig.SUMMARY_FILTER) {
+			long lookups = summaryHit.getN() + summaryMiss.getN();
+			long summaryBits = 0;
+			for (int i = 0; i < Network.size(); i++)
+				summaryBits += ((VRouterProtocol) Network.get(i).getProtocol(pid)).bfRoutingTable.summaryBits();
+			System.err.println(String.format("[Time=%d] 汇总过滤器 命中: %d, 不命中: %d, 不命中率: %f; 每次查询耗时(纳秒): %f, 逐个探测耗时(纳秒): %f, 节省时间(毫秒): %f; 每节点位数: %f",
+					CommonState.getTime(),
+					summaryHit.getN(),
+					summaryMiss.getN(),
+					lookups == 0 ? 0.0 : (double) summaryMiss.getN() / lookups,
+					summaryNanos.getAverage(),
+					scanNanos.getAverage(),
+					(summaryMiss.getN() * scanNanos.getAverage() - summaryNanos.getSum()) / 1e6,
+					(double) summaryBits / Network.size()
+			));
+		}
+
+		// 输出撤销索引的统计信息（仅在删除数据时）
+		if (unindexHop.getN() > 0 || removedIndex.getN() > 0) {
+			System.err.println(String.format("[Time=%d] 撤销索引跳数 最大: %f, 平均: %f; 删除的反向路由表记录数: %d",
+					CommonState.getTime(),
+					unindexHop.getMax(),
+					unindexHop.getAverage(),
+					removedIndex.getN()
+			));
+		}
+
 		// 输出节点活跃度评分统计信息
 		System.err.println(String.format("[Time=%d] 活跃度评分的最大值: %f, 平均值: %f",
 				CommonState.getTime(),
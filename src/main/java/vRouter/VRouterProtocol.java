@@ -11,7 +11,8 @@ package vRouter;
 import kademlia.*;
 import peersim.cdsim.CDProtocol;
 import peersim.config.Configuration;
-import peersim.core.Network;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
 import peersim.core.Node;
 
 import java.math.BigInteger;
@@ -24,17 +25,41 @@ public class VRouterProtocol implements Cloneable, CDProtocol {
 	final String PAR_K = "K";  // K值参数，表示路由表中存储的最大节点数
 	final String PAR_ALPHA = "ALPHA";  // ALPHA值参数，表示每次查询时需要发送的最大消息数
 	final String PAR_BITS = "BITS";  // BITS参数，用于位运算
+	final String PAR_REPLACEMENT_CACHE = "REPLACEMENT_CACHE";  // 每个k-bucket的替换缓存大小
+	final String PAR_STALE_TIME = "STALE_TIME";  // k-bucket头部节点过期的周期数
 	final String PAR_EXPECTED_ELEMENTS = "EXPECTED_ELEMENTS";  // 预计的元素数量
 	final String FALSE_POSITIVE_PROB = "FALSE_POSITIVE_PROB";  // 假阳性概率
-	private static String prefix = null;  // 配置前缀
+	final String PAR_BLOOM_FILTER = "BLOOM_FILTER";  // 过滤器实现（baqend、native、blocked、counting、cuckoo 或 xor）
+	final String PAR_BLOOM_HASH = "BLOOM_HASH";  // baqend 以外的过滤器的哈希来源（mix 或 key）
+	final String PAR_BLOCK_BITS = "BLOCK_BITS";  // 分块布隆过滤器每个块的位数
+	final String PAR_BIT_SLICED_INDEX = "BIT_SLICED_INDEX";  // 反向路由表是否使用位切片索引
+	final String PAR_MAX_CONTACTS = "MAX_CONTACTS";  // 反向路由表最多保留的联系人数
+	final String PAR_CONTACT_EVICTION = "CONTACT_EVICTION";  // 联系人淘汰策略（lru、hits 或 score）
+	final String PAR_BATCH_INDEX = "BATCH_INDEX";  // 是否按下一跳合并索引消息
+	final String PAR_INDEX_DIGEST = "INDEX_DIGEST";  // 是否周期性地发送增量过滤器摘要
+	final String PAR_DIGEST_CYCLES = "DIGEST_CYCLES";  // 摘要发送的间隔
+	final String PAR_ATTENUATED_LAYERS = "ATTENUATED_LAYERS";  // 反向路由表过滤器按距离分的层数
+	final String PAR_DEDUP_TTL = "DEDUP_TTL";  // 去重记录的过期周期数
+	final String PAR_SUMMARY_FILTER = "SUMMARY_FILTER";  // 反向路由表匹配前是否先查询汇总过滤器
+	final String PAR_FILTER_GENERATIONS = "FILTER_GENERATIONS";  // 每个联系人保留的过滤器代数
+	final String PAR_GENERATION_CYCLES = "GENERATION_CYCLES";  // 每一代过滤器的周期数
+	final String PAR_CANCELLATION = "CANCELLATION";  // 找到数据后停止其它查找消息的方式（oracle、none 或 budget）
+	final String PAR_LOOKUP_TIMEOUT = "LOOKUP_TIMEOUT";  // 查找的超时（模拟时间）
+	final String PAR_LOOKUP_BUDGET = "LOOKUP_BUDGET";  // 取消方式为 budget 时每次查找的消息预算
+	static String prefix = null;  // 配置前缀
 	private int vRouterID;  // 虚拟路由器ID
 
 	public Queue<VLookupMessage> lookupMessages;  // 存储查找消息的队列
 	public Queue<IndexMessage> indexMessages;  // 存储索引消息的队列
-	public HashMap<BigInteger, Integer> dataStorage;  // 存储数据的映射，key为数据ID，value为存储标识
+	public Queue<IndexBatchMessage> indexBatches;  // 存储批量索引消息的队列
+	private LinkedHashMap<NodeKey, IndexBatchMessage> pendingBatches;  // 本周期待发送的批量索引消息，key为下一跳
+	public HashMap<NodeKey, Integer> dataStorage;  // 存储数据的映射，key为数据ID，value为存储标识
 
-	public HashMap<BigInteger, Integer> handledIndex = new HashMap<>();  // 记录已经处理过的索引消息
-	public HashMap<BigInteger, Integer> handledQuery = new HashMap<>();  // 记录已经处理过的查找消息
+	public DedupTable<NodeKey, Integer> handledIndex = new DedupTable<>();  // 记录已经处理过的索引消息，value为处理时的时间窗口（过滤器不分代时为1），DEDUP_TTL 个周期后过期
+	public HashMap<NodeKey, IndexRoute> indexRoutes = new HashMap<>();  // 每个数据ID的索引在本节点经过的路径，撤销索引时沿其转发，撤销后删除
+	public DedupTable<Long, Integer> handledQuery = new DedupTable<>();  // 记录已经处理过的查找（按查找ID），value为HANDLED，DEDUP_TTL 个周期后过期
+
+	static final int HANDLED = 1;  // handledQuery 中已处理的查找
 
 	private Integer accessCount;
 	private HashMap<BigInteger, Integer> uniqueAccessNodes;
@@ -47,10 +72,17 @@ public class VRouterProtocol implements Cloneable, CDProtocol {
 	 */
 	private static boolean _ALREADY_INSTALLED = false;  // 是否已安装标识
 
+	/**
+	 * 由 CycleEngine 并行执行 nextCycle 时为 true：发给其它节点的消息先放入发送方的 outbox，
+	 * 在所有节点执行完本周期后按节点顺序投递（见 deliver），在下一个周期处理
+	 */
+	static boolean doubleBuffered = false;
+	private final List<Runnable> outbox = new ArrayList<>();  // 本周期待投递的消息
+
 	/**
 	 * nodeId of this pastry node
 	 */
-	public BigInteger nodeId;  // 节点的ID
+	public NodeKey nodeId;  // 节点的ID
 
 
 	/**
@@ -90,6 +122,8 @@ public class VRouterProtocol implements Cloneable, CDProtocol {
 
 		lookupMessages = new LinkedList<>();  // 初始化查找消息队列
 		indexMessages = new LinkedList<>();  // 初始化索引消息队列
+		indexBatches = new LinkedList<>();  // 初始化批量索引消息队列
+		pendingBatches = new LinkedHashMap<>();
 
 		accessCount=0;
 		uniqueAccessNodes=new HashMap<>();
@@ -112,12 +146,84 @@ public class VRouterProtocol implements Cloneable, CDProtocol {
 		KademliaCommonConfig.K = Configuration.getInt(prefix + "." + PAR_K, KademliaCommonConfig.K);  // 读取K值
 		KademliaCommonConfig.ALPHA = Configuration.getInt(prefix + "." + PAR_ALPHA, KademliaCommonConfig.ALPHA);  // 读取ALPHA值
 		KademliaCommonConfig.BITS = Configuration.getInt(prefix + "." + PAR_BITS, KademliaCommonConfig.BITS);  // 读取BITS值
+		if (KademliaCommonConfig.BITS < 1 || KademliaCommonConfig.BITS > NodeKey.WIDTH)
+			throw new IllegalParameterException(prefix + "." + PAR_BITS, "must be between 1 and " + NodeKey.WIDTH);
+		KademliaCommonConfig.REPLACEMENT_CACHE = Configuration.getInt(prefix + "." + PAR_REPLACEMENT_CACHE, KademliaCommonConfig.REPLACEMENT_CACHE);  // 读取替换缓存大小
+		KademliaCommonConfig.STALE_TIME = Configuration.getInt(prefix + "." + PAR_STALE_TIME, KademliaCommonConfig.STALE_TIME);  // 读取过期周期数
 		VRouterCommonConfig.EXPECTED_ELEMENTS = Configuration.getInt(prefix + "." + PAR_EXPECTED_ELEMENTS, VRouterCommonConfig.EXPECTED_ELEMENTS);  // 读取预计元素数量
 		VRouterCommonConfig.FALSE_POSITIVE_PROB = Configuration.getDouble(prefix + "." + FALSE_POSITIVE_PROB, VRouterCommonConfig.FALSE_POSITIVE_PROB);  // 读取假阳性概率
+		VRouterCommonConfig.BLOOM_FILTER = Configuration.getString(prefix + "." + PAR_BLOOM_FILTER, VRouterCommonConfig.BLOOM_FILTER);  // 读取布隆过滤器实现
+		VRouterCommonConfig.BLOOM_HASH = Configuration.getString(prefix + "." + PAR_BLOOM_HASH, VRouterCommonConfig.BLOOM_HASH);  // 读取探测位置来源
+		if (!VRouterCommonConfig.HASH_MIX.equals(VRouterCommonConfig.BLOOM_HASH)
+				&& !VRouterCommonConfig.HASH_KEY.equals(VRouterCommonConfig.BLOOM_HASH))
+			throw new IllegalParameterException(prefix + "." + PAR_BLOOM_HASH, "must be mix or key");
+		if (VRouterCommonConfig.HASH_KEY.equals(VRouterCommonConfig.BLOOM_HASH) && KademliaCommonConfig.BITS < 128)
+			throw new IllegalParameterException(prefix + "." + PAR_BLOOM_HASH, "key requires BITS of at least 128");
+		VRouterCommonConfig.BLOCK_BITS = Configuration.getInt(prefix + "." + PAR_BLOCK_BITS, VRouterCommonConfig.BLOCK_BITS);  // 读取块的位数
+		if (VRouterCommonConfig.BLOCK_BITS < 64 || Integer.bitCount(VRouterCommonConfig.BLOCK_BITS) != 1)
+			throw new IllegalParameterException(prefix + "." + PAR_BLOCK_BITS, "must be a power of two, at least 64");
+		VRouterCommonConfig.BIT_SLICED_INDEX = Configuration.getBoolean(prefix + "." + PAR_BIT_SLICED_INDEX, VRouterCommonConfig.BIT_SLICED_INDEX);  // 读取是否启用位切片索引
+		if (VRouterCommonConfig.BIT_SLICED_INDEX && !ContactWithBloomFilter.isBloomFilter())
+			throw new IllegalParameterException(prefix + "." + PAR_BIT_SLICED_INDEX, "requires a bloom filter (baqend, native or blocked)");
+		VRouterCommonConfig.MAX_CONTACTS = Configuration.getInt(prefix + "." + PAR_MAX_CONTACTS, VRouterCommonConfig.MAX_CONTACTS);  // 读取联系人数上限
+		VRouterCommonConfig.CONTACT_EVICTION = Configuration.getString(prefix + "." + PAR_CONTACT_EVICTION, VRouterCommonConfig.CONTACT_EVICTION);  // 读取联系人淘汰策略
+		if (VRouterCommonConfig.MAX_CONTACTS < 0)
+			throw new IllegalParameterException(prefix + "." + PAR_MAX_CONTACTS, "must not be negative");
+		if (!VRouterCommonConfig.EVICT_LRU.equals(VRouterCommonConfig.CONTACT_EVICTION)
+				&& !VRouterCommonConfig.EVICT_HITS.equals(VRouterCommonConfig.CONTACT_EVICTION)
+				&& !VRouterCommonConfig.EVICT_SCORE.equals(VRouterCommonConfig.CONTACT_EVICTION))
+			throw new IllegalParameterException(prefix + "." + PAR_CONTACT_EVICTION, "must be lru, hits or score");
+		if (VRouterCommonConfig.MAX_CONTACTS > 0 && VRouterCommonConfig.BIT_SLICED_INDEX)
+			throw new IllegalParameterException(prefix + "." + PAR_MAX_CONTACTS, "cannot be combined with BIT_SLICED_INDEX");
+		VRouterCommonConfig.BATCH_INDEX = Configuration.getBoolean(prefix + "." + PAR_BATCH_INDEX, VRouterCommonConfig.BATCH_INDEX);  // 读取是否合并索引消息
+		VRouterCommonConfig.INDEX_DIGEST = Configuration.getBoolean(prefix + "." + PAR_INDEX_DIGEST, VRouterCommonConfig.INDEX_DIGEST);  // 读取是否发送摘要
+		VRouterCommonConfig.DIGEST_CYCLES = Configuration.getInt(prefix + "." + PAR_DIGEST_CYCLES, VRouterCommonConfig.DIGEST_CYCLES);  // 读取摘要间隔
+		if (VRouterCommonConfig.DIGEST_CYCLES < 1)
+			throw new IllegalParameterException(prefix + "." + PAR_DIGEST_CYCLES, "must be positive");
+		if (VRouterCommonConfig.INDEX_DIGEST && !VRouterCommonConfig.FILTER_NATIVE.equals(VRouterCommonConfig.BLOOM_FILTER)
+				&& !VRouterCommonConfig.FILTER_BLOCKED.equals(VRouterCommonConfig.BLOOM_FILTER))
+			throw new IllegalParameterException(prefix + "." + PAR_INDEX_DIGEST, "requires BLOOM_FILTER native or blocked");
+		VRouterCommonConfig.DEDUP_TTL = Configuration.getInt(prefix + "." + PAR_DEDUP_TTL, VRouterCommonConfig.DEDUP_TTL);  // 读取去重记录的过期周期数
+		if (VRouterCommonConfig.DEDUP_TTL < 0)
+			throw new IllegalParameterException(prefix + "." + PAR_DEDUP_TTL, "must not be negative");
+		VRouterCommonConfig.SUMMARY_FILTER = Configuration.getBoolean(prefix + "." + PAR_SUMMARY_FILTER, VRouterCommonConfig.SUMMARY_FILTER);  // 读取是否启用汇总过滤器
+		VRouterCommonConfig.FILTER_GENERATIONS = Configuration.getInt(prefix + "." + PAR_FILTER_GENERATIONS, VRouterCommonConfig.FILTER_GENERATIONS);  // 读取过滤器代数
+		VRouterCommonConfig.GENERATION_CYCLES = Configuration.getInt(prefix + "." + PAR_GENERATION_CYCLES, VRouterCommonConfig.GENERATION_CYCLES);  // 读取每一代的周期数
+		if (VRouterCommonConfig.FILTER_GENERATIONS < 0)
+			throw new IllegalParameterException(prefix + "." + PAR_FILTER_GENERATIONS, "must not be negative");
+		if (VRouterCommonConfig.GENERATION_CYCLES < 1)
+			throw new IllegalParameterException(prefix + "." + PAR_GENERATION_CYCLES, "must be positive");
+		if (VRouterCommonConfig.FILTER_GENERATIONS > 0 && VRouterCommonConfig.BIT_SLICED_INDEX)
+			throw new IllegalParameterException(prefix + "." + PAR_FILTER_GENERATIONS, "cannot be combined with BIT_SLICED_INDEX");
+		if (VRouterCommonConfig.INDEX_DIGEST && (VRouterCommonConfig.BIT_SLICED_INDEX || VRouterCommonConfig.FILTER_GENERATIONS > 0))
+			throw new IllegalParameterException(prefix + "." + PAR_INDEX_DIGEST, "cannot be combined with BIT_SLICED_INDEX or FILTER_GENERATIONS");
+		if (VRouterCommonConfig.SUMMARY_FILTER && (VRouterCommonConfig.MAX_CONTACTS > 0
+				|| VRouterCommonConfig.FILTER_GENERATIONS > 0 || ContactWithBloomFilter.isRemovable()))
+			throw new IllegalParameterException(prefix + "." + PAR_SUMMARY_FILTER, "cannot be combined with MAX_CONTACTS, FILTER_GENERATIONS or BLOOM_FILTER counting or cuckoo");
+		VRouterCommonConfig.ATTENUATED_LAYERS = Configuration.getInt(prefix + "." + PAR_ATTENUATED_LAYERS, VRouterCommonConfig.ATTENUATED_LAYERS);  // 读取过滤器层数
+		if (VRouterCommonConfig.ATTENUATED_LAYERS < 0)
+			throw new IllegalParameterException(prefix + "." + PAR_ATTENUATED_LAYERS, "must not be negative");
+		if (VRouterCommonConfig.ATTENUATED_LAYERS > 0 && (VRouterCommonConfig.BIT_SLICED_INDEX
+				|| VRouterCommonConfig.FILTER_GENERATIONS > 0 || VRouterCommonConfig.INDEX_DIGEST))
+			throw new IllegalParameterException(prefix + "." + PAR_ATTENUATED_LAYERS, "cannot be combined with BIT_SLICED_INDEX, FILTER_GENERATIONS or INDEX_DIGEST");
+		VRouterCommonConfig.CANCELLATION = Configuration.getString(prefix + "." + PAR_CANCELLATION, VRouterCommonConfig.CANCELLATION);  // 读取查找的取消方式
+		if (!VRouterCommonConfig.CANCEL_ORACLE.equals(VRouterCommonConfig.CANCELLATION)
+				&& !VRouterCommonConfig.CANCEL_NONE.equals(VRouterCommonConfig.CANCELLATION)
+				&& !VRouterCommonConfig.CANCEL_BUDGET.equals(VRouterCommonConfig.CANCELLATION))
+			throw new IllegalParameterException(prefix + "." + PAR_CANCELLATION, "must be oracle, none or budget");
+		VRouterCommonConfig.LOOKUP_BUDGET = Configuration.getInt(prefix + "." + PAR_LOOKUP_BUDGET, VRouterCommonConfig.LOOKUP_BUDGET);  // 读取查找的消息预算
+		if (VRouterCommonConfig.LOOKUP_BUDGET < 1)
+			throw new IllegalParameterException(prefix + "." + PAR_LOOKUP_BUDGET, "must be positive");
+		VRouterCommonConfig.LOOKUP_TIMEOUT = Configuration.getLong(prefix + "." + PAR_LOOKUP_TIMEOUT, VRouterCommonConfig.LOOKUP_TIMEOUT);  // 读取查找的超时
+		if (VRouterCommonConfig.LOOKUP_TIMEOUT < 0)
+			throw new IllegalParameterException(prefix + "." + PAR_LOOKUP_TIMEOUT, "must not be negative");
 
 		_ALREADY_INSTALLED = true;  // 标记已安装配置
 	}
-	private void updateDataMetrics(BigInteger sourceNodeId, BigInteger dataId) {
+	private void updateDataMetrics(NodeKey source, NodeKey data) {
+		// 评分数据会写入区块，在此处转换回 BigInteger
+		BigInteger sourceNodeId = source.toBigInteger();
+		BigInteger dataId = data.toBigInteger();
 		// 更新总访问次数
 		accessCount+=1;
 		// 更新独立访问节点数
@@ -140,43 +246,19 @@ public class VRouterProtocol implements Cloneable, CDProtocol {
 	}
 
 	/**
-	 * 通过执行二分查找，在网络中搜索具有特定节点Id的节点（我们关注网络的排序）
+	 * 通过节点目录查找具有特定节点Id的节点，与网络的排序无关
 	 *
 	 * @param searchNodeId
-	 *            BigInteger
+	 *            NodeKey
 	 * @return Node
 	 */
-	private Node nodeIdtoNode(BigInteger searchNodeId) {
-		if (searchNodeId == null)  // 如果目标节点ID为空，返回null
-			return null;
-
-		int inf = 0;
-		int sup = Network.size() - 1;
-		int m;
-
-		while (inf <= sup) {  // 使用二分查找节点
-			m = (inf + sup) / 2;
-
-			BigInteger mId = ((VRouterProtocol) Network.get(m).getProtocol(vRouterID)).nodeId;
-
-			if (mId.equals(searchNodeId))  // 找到目标节点
-				return Network.get(m);
-
-			if (mId.compareTo(searchNodeId) < 0)  // 目标节点在中点右边
-				inf = m + 1;
-			else  // 目标节点在中点左边
-				sup = m - 1;
-		}
-
-		// 如果没有找到，进行传统的线性查找，确保更高的可靠性
-		BigInteger mId;
-		for (int i = Network.size() - 1; i >= 0; i--) {  // 反向遍历
-			mId = ((VRouterProtocol) Network.get(i).getProtocol(vRouterID)).nodeId;
-			if (mId.equals(searchNodeId))  // 找到目标节点
-				return Network.get(i);
-		}
+	private Node nodeIdtoNode(NodeKey searchNodeId) {
+		return NodeDirectory.get(searchNodeId);  // 单次哈希查找，节点不存在时返回null
+	}
 
-		return null;  // 如果没有找到目标节点，返回null
+	// 节点是否已离开网络或不在线（不能再向其发送消息）
+	private static boolean unreachable(Node node) {
+		return node == null || !node.isUp();
 	}
 
 	/**
@@ -186,107 +268,261 @@ public class VRouterProtocol implements Cloneable, CDProtocol {
 	 *            BigInteger
 	 */
 	public void setNodeId(BigInteger tmp) {
-		this.nodeId = tmp;  // 设置当前节点的ID
-		this.routingTable.nodeId = tmp;  // 设置路由表的节点ID
+		this.nodeId = NodeKey.of(tmp);  // 设置当前节点的ID
+		this.routingTable.nodeId = this.nodeId;  // 设置路由表的节点ID
 	}
 
 	@Override
 	public void nextCycle(Node node, int protocolID) {
 		MyNode myNode = (MyNode) node; // 将节点转换为 MyNode
 		this.vRouterID = protocolID;  // 更新协议ID
+		bfRoutingTable.dataScores = myNode.getDataScore();  // 按活跃度淘汰联系人时使用最新区块的数据评分
 		while (!lookupMessages.isEmpty()) {  // 处理查找消息队列中的所有消息
 			VLookupMessage msg = lookupMessages.poll();
 			if (msg == null) continue;
-			routingTable.addNeighbour(msg.from);  // 将消息发送方添加到路由表
-			if (msg.dataID.equals(QueryGenerator.DEBUGTARGET)) {  // 调试时记录查询路径
-				QueryGenerator.queryPath.add(Util.distance(msg.dataID, this.nodeId));
-			}
-			handleLookupMessage(msg, protocolID);  // 处理查找消息
+			receiveLookup(msg, protocolID);
 		}
+		long indexStart = System.nanoTime();
 		while (!indexMessages.isEmpty()) {  // 处理索引消息队列中的所有消息
 			IndexMessage msg = indexMessages.poll();
 			if (msg == null) continue;
-			routingTable.addNeighbour(msg.from);  // 将消息发送方添加到路由表
-			if (msg.dataID.equals(QueryGenerator.DEBUGTARGET)) {  // 调试时记录索引路径
-				QueryGenerator.indexPath.add(Util.distance(msg.dataID, this.nodeId));
-			}
-			handleIndexMessage(msg, protocolID);  // 处理索引消息
+			receiveIndex(msg, protocolID);
 		}
+		while (!indexBatches.isEmpty()) {  // 处理批量索引消息队列中的所有消息
+			IndexBatchMessage batch = indexBatches.poll();
+			if (batch == null) continue;
+			receiveIndexBatch(batch, protocolID);
+		}
+
+		long currentCycle = currentCycle();
 
-		long currentCycle = peersim.core.CommonState.getTime();
+		// 过滤器分代时，每个时间窗口开始时重新发布本地存储数据的索引
+		if (VRouterCommonConfig.FILTER_GENERATIONS > 0 && currentCycle > 0
+				&& currentCycle % VRouterCommonConfig.GENERATION_CYCLES == 0) {
+			reannounceData(protocolID);
+		}
+
+		// 发送本周期合并的索引消息（包括本地新存储数据的索引），摘要每 DIGEST_CYCLES 个周期发送一次
+		if (!VRouterCommonConfig.INDEX_DIGEST || currentCycle % VRouterCommonConfig.DIGEST_CYCLES == 0) {
+			flushIndexBatches(protocolID);
+		}
+		VRouterObserver.indexNanos.add(System.nanoTime() - indexStart);
 
-		// 如果是中心节点，执行中心节点任务
+		// 并行执行时中心节点任务由 CycleEngine 在所有节点执行完本周期后依次执行
+		if (!doubleBuffered) {
+			executeCentralTasks(myNode);
+		}
+	}
+
+	// 处理一条查找消息：查找开始时记录开始时间，将发送方添加到路由表；处理完毕（转发和反向消息已发出）后记入上下文
+	void receiveLookup(VLookupMessage msg, int protocolID) {
+		msg.context.start(CommonState.getTime());
+		routingTable.addNeighbour(msg.from);  // 将消息发送方添加到路由表
+		if (msg.dataID.equals(QueryGenerator.DEBUGTARGET)) {  // 调试时记录查询路径
+			QueryGenerator.queryPath.add(Util.distance(msg.dataID, this.nodeId));
+		}
+		handleLookupMessage(msg, protocolID);  // 处理查找消息
+		msg.context.handled();
+	}
+
+	/**
+	 * 从本节点发起一次查找，查找消息在本节点的下一次 nextCycle 中开始处理。
+	 * 返回的上下文记录查找的结果、跳数和延迟，同一数据ID的多次查找各自独立。
+	 * @param dataID The data ID to look up.
+	 * @return The lookup context.
+	 */
+	public LookupContext lookup(NodeKey dataID) {
+		LookupContext context = new LookupContext(dataID, this.nodeId);
+		context.sent();
+		VLookupMessage msg = new VLookupMessage(context, this.nodeId);
+		msg.budget = VRouterCommonConfig.LOOKUP_BUDGET;
+		lookupMessages.add(msg);
+		return context;
+	}
+
+	// 处理一条索引消息，将发送方添加到路由表
+	void receiveIndex(IndexMessage msg, int protocolID) {
+		routingTable.addNeighbour(msg.from);  // 将消息发送方添加到路由表
+		if (msg.dataID.equals(QueryGenerator.DEBUGTARGET)) {  // 调试时记录索引路径
+			QueryGenerator.indexPath.add(Util.distance(msg.dataID, this.nodeId));
+		}
+		handleIndexMessage(msg, protocolID);  // 处理索引消息
+	}
+
+	// 处理一条批量索引消息，将发送方添加到路由表
+	void receiveIndexBatch(IndexBatchMessage batch, int protocolID) {
+		routingTable.addNeighbour(batch.from);  // 将消息发送方添加到路由表
+		handleIndexBatch(batch, protocolID);  // 处理批量索引消息
+	}
+
+	/**
+	 * 如果是中心节点，执行中心节点任务
+	 * @param myNode The node running this protocol.
+	 */
+	void executeCentralTasks(MyNode myNode) {
+		long currentCycle = currentCycle();
 		if (myNode.getIsCentralNode(currentCycle) && QueryGenerator.executeFlag) {
 		System.out.println("VRouterProtocol nextCycle called for node: " + myNode.getID()+" isCentral: "+myNode.getIsCentralNode(currentCycle));
 			myNode.getCentralNodeManager().execute();
 		}
 	}
+
+	/**
+	 * 投递本节点 outbox 中的消息（按发送顺序），仅在并行执行时使用
+	 */
+	void deliver() {
+		for (Runnable r : outbox) {
+			r.run();
+		}
+		outbox.clear();
+	}
+
+	/**
+	 * 当前周期（周期驱动时即模拟时间），周期长度由 KademliaCommonConfig.CYCLE_LENGTH 给出，k-bucket 使用同一个时钟
+	 * @return long
+	 */
+	public static long currentCycle() {
+		return KademliaCommonConfig.currentCycle();
+	}
+
+	/**
+	 * 把消息放入目标节点的消息队列，并行执行时先放入本节点的 outbox；事件驱动的子类改为经由传输层发送
+	 * @param target The target node.
+	 * @param inbox The message queue of the target node.
+	 * @param msg The message.
+	 * @param protocolID The protocol ID.
+	 */
+	<T> void send(Node target, Queue<T> inbox, T msg, int protocolID) {
+		countSent(msg);
+		if (doubleBuffered) {
+			outbox.add(() -> inbox.add(msg));
+		} else {
+			inbox.add(msg);
+		}
+	}
+	// 把发出的查找消息记入查找的上下文（在本条消息处理完毕之前计入，查找不会被误判为失败）
+	static void countSent(Object msg) {
+		if (msg instanceof VLookupMessage) {
+			((VLookupMessage) msg).context.sent();
+		}
+	}
+
+	/**
+	 * 取消方式为 budget 时第 i 个副本的预算：发出 copies 个副本后剩余的预算在副本之间平分，余数分给前面的副本
+	 * @param budget 收到的消息的预算
+	 * @param copies 发出的副本数（不超过 budget）
+	 * @param i 副本的序号
+	 * @return int
+	 */
+	static int share(int budget, int copies, int i) {
+		int rest = budget - copies;
+		return rest / copies + (i < rest % copies ? 1 : 0);
+	}
+
 	/**
 	 * Handles the lookup message and performs the necessary actions to find the target data.
 	 * @param msg The lookup message to handle.
 	 * @param protocolID The protocol ID.
 	 */
 	public void handleLookupMessage(VLookupMessage msg, int protocolID) {
-		// 统计数据查询的消息数
-		if (VRouterObserver.dataQueryTraffic.get(msg.dataID) != null) {
-			int msgs = VRouterObserver.dataQueryTraffic.get(msg.dataID);
-			msgs++;
-			VRouterObserver.dataQueryTraffic.put(msg.dataID, msgs);
-		}
+		LookupContext context = msg.context;
 
-		// 避免本节点重复请求同一个数据，默认请求只发送一次。
-		if (QueryGenerator.queriedData.get(msg.dataID) == 1) {
+		// 查找已经完成，不再处理（只有 oracle 方式直接检查全局的上下文，其它方式由 handledQuery 记录）
+		if (VRouterCommonConfig.CANCEL_ORACLE.equals(VRouterCommonConfig.CANCELLATION) && context.isFound()) {
 			// VRouterObserver.droppedLookupMessage.add(msg.forwardHops + msg.backwardHops);
 			return;
 		}
 
-		// 如果消息已经处理过，直接返回
-		if (handledQuery.containsKey(msg.dataID)) return;
+		// 如果本节点已经处理过这次查找，直接返回
+		if (handledQuery.containsKey(context.queryId)) return;
+
+		// 查找已超时（消息带有截止时间），不再处理
+		if (context.timedOut(CommonState.getTime())) return;
 
 		updateDataMetrics(msg.from, msg.dataID);
 
-		// 如果本地存储了数据
+		// 如果本地存储了数据（并行执行时在周期末记录查找完成，本周期内本节点不再重复处理）
 		if (dataStorage.containsKey(msg.dataID)) {
-			QueryGenerator.queriedData.put(msg.dataID, 1);
+			long now = CommonState.getTime();
+			if (doubleBuffered) {
+				outbox.add(() -> context.complete(msg.forwardHops, msg.backwardHops, now));
+				handledQuery.put(context.queryId, HANDLED);
+			} else {
+				context.complete(msg.forwardHops, msg.backwardHops, now);
+				if (!VRouterCommonConfig.CANCEL_ORACLE.equals(VRouterCommonConfig.CANCELLATION)) {
+					handledQuery.put(context.queryId, HANDLED);  // 不检查全局上下文时，后到的副本由去重表丢弃
+				}
+			}
 			VRouterObserver.successLookupForwardHop.add(msg.forwardHops);  // 记录查找成功的前向跳数
 			VRouterObserver.successLookupBackwardHop.add(msg.backwardHops);  // 记录查找成功的后向跳数
 			VRouterObserver.totalSuccessHops.add(msg.forwardHops + msg.backwardHops);  // 记录查找成功的总跳数
+			VRouterObserver.addLookupLatency(now - context.startTime());  // 记录查找的延迟
 			return;
 		}
 
+		// 取消方式为 budget 时本消息最多再发出 msg.budget 条副本，先发反向消息，再转发给更接近的节点，
+		// 发出的副本平分剩余的预算；每个副本单独创建，各自携带自己的预算
+		boolean budgeted = VRouterCommonConfig.CANCEL_BUDGET.equals(VRouterCommonConfig.CANCELLATION);
+		int copies = 0;  // 本节点将发出的副本数（仅在 budget 方式下使用）
+		int sent = 0;
+
 		// 查找目标数据在反向路由表中的匹配节点
-		List<BigInteger> backwardList = bfRoutingTable.getMatch(msg.dataID);
+		List<NodeKey> backwardList = bfRoutingTable.getMatch(msg.dataID);
 		if (backwardList != null) {
 			// 从反向列表中去除距离目标数据ID更近的节点
-			backwardList.removeIf(n -> Util.distance(n, msg.dataID).compareTo(Util.distance(this.nodeId, msg.dataID)) < 0);
-
-			// 如果反向路由表中找到了匹配节点
-			if (backwardList.size() > 0) {
-				// 向目标数据的父节点发出反向查询请求
-				for (BigInteger n : backwardList) {
-					Node nextHop = this.nodeIdtoNode(n);  // 找到下一跳节点
-					VRouterProtocol nextProtocol = (VRouterProtocol) nextHop.getProtocol(protocolID);  // 获取该节点的协议实例
-					VLookupMessage nextMsg = msg.backward(this.nodeId);  // 创建反向消息
-					nextProtocol.lookupMessages.add(nextMsg);  // 将反向消息加入下一跳节点的查找消息队列
-				}
+			backwardList.removeIf(n -> Util.compareDistance(n, this.nodeId, msg.dataID) < 0);
+
+			// 过滤器分层时只向经由其到达数据最近的节点发出反向查询，不再发给所有匹配的节点
+			if (VRouterCommonConfig.ATTENUATED_LAYERS > 0 && backwardList.size() > 1) {
+				backwardList = bfRoutingTable.shallowest(backwardList);
+			}
+
+			// 分配预算前先去掉已离开网络的反向联系人
+			if (budgeted) {
+				backwardList.removeIf(n -> unreachable(this.nodeIdtoNode(n)));
+				copies += backwardList.size();
+			}
+		}
+		int closerCount = msg.direction ? routingTable.selectLiveNeighbours(msg.dataID) : 0;  // 获取离目标数据ID更近的节点
+		if (budgeted) {
+			copies = Math.min(copies + closerCount, msg.budget);
+		}
+
+		// 如果反向路由表中找到了匹配节点
+		if (backwardList != null && backwardList.size() > 0) {
+			// 向目标数据的父节点发出反向查询请求
+			for (NodeKey n : backwardList) {
+				if (budgeted && sent == copies) break;  // 预算已用完
+				Node nextHop = this.nodeIdtoNode(n);  // 找到下一跳节点
+				if (unreachable(nextHop)) continue;  // 反向联系人已离开网络
+				VRouterProtocol nextProtocol = (VRouterProtocol) nextHop.getProtocol(protocolID);  // 获取该节点的协议实例
+				VLookupMessage nextMsg = msg.backward(this.nodeId);  // 创建反向消息
+				if (budgeted) nextMsg.budget = share(msg.budget, copies, sent++);
+				send(nextHop, nextProtocol.lookupMessages, nextMsg, protocolID);  // 将反向消息加入下一跳节点的查找消息队列
+				VRouterObserver.backwardLookupMessages.add(1);  // 统计反向查找消息数
 			}
 		}
 
 		// 如果消息是查找消息，才需要继续转发
 		if (msg.direction) {
 			VLookupMessage nextHop = msg.forward(this.nodeId);  // 创建转发消息
-			BigInteger[] closerNodes = getCloserNodes(nextHop.dataID);  // 获取离目标数据ID更近的节点
 
 			// 将消息发送给更接近的节点
-			for (int i = 0; i < closerNodes.length; i++) {
-				Node targetNode = this.nodeIdtoNode(closerNodes[i]);  // 找到目标节点
+			for (int i = 0; i < closerCount; i++) {
+				if (budgeted && sent == copies) break;  // 预算已用完
+				NodeKey target = routingTable.selected(i);
+				Node targetNode = this.nodeIdtoNode(target);  // 找到目标节点
 				VRouterProtocol targetPro = (VRouterProtocol) targetNode.getProtocol(protocolID);  // 获取该节点的协议实例
-				targetPro.lookupMessages.add(nextHop);  // 将转发消息加入目标节点的查找消息队列
+				if (budgeted) {
+					nextHop = msg.forward(this.nodeId);
+					nextHop.budget = share(msg.budget, copies, sent++);
+				}
+				send(targetNode, targetPro.lookupMessages, nextHop, protocolID);  // 将转发消息加入目标节点的查找消息队列
 				// VRouterObserver.totalIndexHop.add(1);  // 记录消息转发次数（可选）
 			}
 		}
 
-		handledQuery.put(msg.dataID, 1);  // 标记该数据ID的查找已处理
+		handledQuery.put(context.queryId, HANDLED);  // 标记这次查找已处理
 		updateDataMetrics(msg.from, msg.dataID);
 	}
 
@@ -298,46 +534,232 @@ public class VRouterProtocol implements Cloneable, CDProtocol {
 	public void handleIndexMessage(IndexMessage msg, int protocolID) {
 		this.vRouterID = protocolID;  // 更新协议ID
 
-		// 统计数据索引的消息数
-		if (VRouterObserver.dataIndexTraffic.get(msg.dataID) != null) {
-			int msgs = VRouterObserver.dataIndexTraffic.get(msg.dataID);
-			msgs++;
-			VRouterObserver.dataIndexTraffic.put(msg.dataID, msgs);
+		if (msg.remove) {
+			handleUnindexMessage(msg, protocolID);
+			return;
+		}
+
+		VRouterObserver.indexMessageCount.add(1);  // 统计索引消息条数
+		VRouterObserver.indexBytes.add(2 * keyBytes() + 4);  // 来源节点ID、数据ID和跳数
+		countIndexTraffic(msg.dataID);
+
+		// 发送方撤销该索引的消息已经先到达，丢弃这条索引
+		if (unindexedBefore(msg.dataID, msg.from)) {
+			return;
+		}
+
+		// 将目标数据ID添加到发送方的布隆过滤器中（没有该联系人时创建），数据在发送方之后还有 hops - 1 跳
+		this.bfRoutingTable.add(msg.from, msg.dataID, msg.hops - 1);
+		IndexRoute.addOnce(route(msg.dataID).senders, msg.from);
+
+		relayIndex(msg.dataID, msg.hops, protocolID);
+	}
+
+	/**
+	 * Handles a batched index message: all data IDs are added to the sender's filter in one pass (a digest is merged
+	 * bitwise instead), then each one is relayed as if it had arrived in its own index message.
+	 * @param batch The batched index message to handle.
+	 * @param protocolID The protocol ID.
+	 */
+	public void handleIndexBatch(IndexBatchMessage batch, int protocolID) {
+		this.vRouterID = protocolID;  // 更新协议ID
+		VRouterObserver.indexMessageCount.add(1);  // 统计索引消息条数
+		VRouterObserver.indexBytes.add(batch.bytes(keyBytes()));
+		for (NodeKey dataID : batch.dataIDs) {
+			countIndexTraffic(dataID);
+			if (dataID.equals(QueryGenerator.DEBUGTARGET)) {  // 调试时记录索引路径
+				QueryGenerator.indexPath.add(Util.distance(dataID, this.nodeId));
+			}
+		}
+
+		// 丢弃发送方的撤销消息已经先到达的数据ID（摘要中的位无法去掉，只是不再转发）
+		List<NodeKey> dataIDs = new ArrayList<>(batch.size());
+		List<Integer> hops = new ArrayList<>(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			NodeKey dataID = batch.dataIDs.get(i);
+			if (unindexedBefore(dataID, batch.from)) continue;
+			dataIDs.add(dataID);
+			hops.add(batch.hops.get(i));
+			IndexRoute.addOnce(route(dataID).senders, batch.from);
 		}
 
-		// 查找目标节点的布隆过滤器联系
-		ContactWithBloomFilter bfContact = this.bfRoutingTable.get(msg.from);
-		if (bfContact == null) {
-			bfContact = new ContactWithBloomFilter(msg.from);  // 如果没有找到联系，创建新的布隆过滤器联系
-			this.bfRoutingTable.put(bfContact);  // 将联系添加到布隆过滤器路由表中
+		// 将所有数据ID添加到发送方的过滤器中，摘要直接按位合并
+		if (batch.digest != null) {
+			this.bfRoutingTable.merge(batch.from, batch.digest, dataIDs);
+		} else {
+			this.bfRoutingTable.addAll(batch.from, dataIDs, depths(hops));
 		}
-		bfContact.add(msg.dataID);  // 将目标数据ID添加到布隆过滤器中
 
-		// 如果该索引消息已处理，返回
-		if (handledIndex.containsKey(msg.dataID)) {
+		for (int i = 0; i < dataIDs.size(); i++) {
+			relayIndex(dataIDs.get(i), hops.get(i), protocolID);
+		}
+	}
+
+	// 统计数据索引的消息数（批量消息中的每个数据ID各计一次，与逐条发送时可比）
+	private void countIndexTraffic(NodeKey dataID) {
+		synchronized (VRouterObserver.dataIndexTraffic) {
+			Integer msgs = VRouterObserver.dataIndexTraffic.get(dataID);
+			if (msgs != null) {
+				VRouterObserver.dataIndexTraffic.put(dataID, msgs + 1);
+			}
+		}
+	}
+
+	// 将数据ID的索引转发给更接近的节点（每个数据ID只转发一次，分代时每个时间窗口一次）
+	private void relayIndex(NodeKey dataID, int hops, int protocolID) {
+		// 如果该索引消息已处理（分代时为在当前时间窗口内已处理），返回
+		int window = indexWindow();
+		Integer handled = handledIndex.get(dataID);
+		if (handled != null && handled == window) {
 			return;
 		}
 
-		IndexMessage relay = msg.relay(this.nodeId);  // 创建索引消息的中继消息
-		BigInteger[] closerNodes = getCloserNodes(msg.dataID);  // 获取离目标数据ID更接近的节点
+		int closerCount;
+		if (batchIndex()) {
+			closerCount = queueIndex(dataID, hops + 1);  // 按下一跳合并，周期末发送
+		} else {
+			IndexMessage relay = new IndexMessage(dataID, this.nodeId);  // 创建索引消息的中继消息
+			relay.hops = hops + 1;
+			closerCount = routingTable.selectLiveNeighbours(dataID);  // 获取离目标数据ID更接近的节点
+			IndexRoute route = route(dataID);
+
+			// 将中继消息发送给更接近的节点
+			for (int i = 0; i < closerCount; i++) {
+				IndexRoute.addOnce(route.nextHops, routingTable.selected(i));  // 记录下一跳，撤销索引时使用
+				Node targetNode = this.nodeIdtoNode(routingTable.selected(i));  // 找到目标节点
+				VRouterProtocol targetPro = (VRouterProtocol) targetNode.getProtocol(protocolID);  // 获取该节点的协议实例
+				send(targetNode, targetPro.indexMessages, relay, protocolID);  // 将中继消息加入目标节点的索引消息队列
+				if (dataID.equals(QueryGenerator.DEBUGTARGET)) {
+					QueryGenerator.indexToPath.add(Util.distance(dataID, targetPro.nodeId));  // 调试时记录索引路径
+				}
+				// VRouterObserver.totalIndexHop.add(1);  // 记录消息转发次数（可选）
+			}
+		}
+
+		// 如果没有更接近的节点，说明本地节点是最接近的
+		if (closerCount == 0) {
+			VRouterObserver.indexHop.add(hops);  // 记录索引消息的跳数
+			route(dataID).closest = true;
+		}
+
+		handledIndex.put(dataID, window);  // 标记该数据ID的索引已处理
+	}
+
+	// 把数据ID加入发往每个更接近节点的批量索引消息，返回更接近的节点数
+	private int queueIndex(NodeKey dataID, int hops) {
+		int closerCount = routingTable.selectLiveNeighbours(dataID);  // 获取离目标数据ID更接近的节点
+		IndexRoute route = route(dataID);
+		for (int i = 0; i < closerCount; i++) {
+			NodeKey next = routingTable.selected(i);
+			IndexRoute.addOnce(route.nextHops, next);  // 记录下一跳，撤销索引时使用
+			IndexBatchMessage batch = pendingBatches.get(next);
+			if (batch == null) {
+				batch = new IndexBatchMessage(this.nodeId);
+				pendingBatches.put(next, batch);
+			}
+			batch.add(dataID, hops);
+			if (dataID.equals(QueryGenerator.DEBUGTARGET)) {
+				QueryGenerator.indexToPath.add(Util.distance(dataID, next));  // 调试时记录索引路径
+			}
+		}
+		return closerCount;
+	}
 
-		// 将中继消息发送给更接近的节点
-		for (BigInteger closerNode : closerNodes) {
-			Node targetNode = this.nodeIdtoNode(closerNode);  // 找到目标节点
+	// 发送本周期合并的批量索引消息
+	private void flushIndexBatches(int protocolID) {
+		for (Map.Entry<NodeKey, IndexBatchMessage> e : pendingBatches.entrySet()) {
+			Node targetNode = this.nodeIdtoNode(e.getKey());  // 找到目标节点
+			if (unreachable(targetNode)) continue;  // 下一跳在合并期间离开了网络
 			VRouterProtocol targetPro = (VRouterProtocol) targetNode.getProtocol(protocolID);  // 获取该节点的协议实例
-			targetPro.indexMessages.add(relay);  // 将中继消息加入目标节点的索引消息队列
-			if (msg.dataID.equals(QueryGenerator.DEBUGTARGET)) {
-				QueryGenerator.indexToPath.add(Util.distance(msg.dataID, targetPro.nodeId));  // 调试时记录索引路径
+			IndexBatchMessage batch = e.getValue();
+			if (VRouterCommonConfig.INDEX_DIGEST) {
+				batch.digest = ContactWithBloomFilter.digest(bfRoutingTable.config, batch.dataIDs);
 			}
-			// VRouterObserver.totalIndexHop.add(1);  // 记录消息转发次数（可选）
+			send(targetNode, targetPro.indexBatches, batch, protocolID);
 		}
+		pendingBatches.clear();
+	}
 
-		// 如果没有更接近的节点，说明本地节点是最接近的
-		if (closerNodes.length == 0) {
-			VRouterObserver.indexHop.add(msg.hops);  // 记录索引消息的跳数
+	// 每个数据ID在发送方之后的跳数
+	private static List<Integer> depths(List<Integer> hops) {
+		List<Integer> depths = new ArrayList<>(hops.size());
+		for (int h : hops) {
+			depths.add(h - 1);
 		}
+		return depths;
+	}
+
+	// 索引是否按下一跳合并发送（批量索引或摘要）
+	private static boolean batchIndex() {
+		return VRouterCommonConfig.BATCH_INDEX || VRouterCommonConfig.INDEX_DIGEST;
+	}
 
-		handledIndex.put(msg.dataID, 1);  // 标记该数据ID的索引已处理
+	// 节点ID和数据ID的字节数
+	private static int keyBytes() {
+		return (KademliaCommonConfig.BITS + 7) / 8;
+	}
+
+	/**
+	 * Handles the un-index message: removes the data ID from the sender's filter and relays the message to the next
+	 * hops the index was actually sent to, so that deleted data no longer attracts backward lookups. An un-index that
+	 * arrives before the sender's index is remembered, and the late index is dropped.
+	 * @param msg The un-index message to handle.
+	 * @param protocolID The protocol ID.
+	 */
+	private void handleUnindexMessage(IndexMessage msg, int protocolID) {
+		// 从发送方的过滤器中删除目标数据ID
+		if (this.bfRoutingTable.remove(msg.from, msg.dataID)) {
+			VRouterObserver.removedIndex.add(1);
+		}
+
+		// 还没有收到发送方的索引：记录下来，稍后到达的索引不再加入过滤器和转发
+		IndexRoute route = indexRoutes.get(msg.dataID);
+		if (route == null || !route.senders.remove(msg.from)) {
+			IndexRoute.addOnce(route(msg.dataID).unindexed, msg.from);
+			return;
+		}
+		handledIndex.remove(msg.dataID);
+
+		// 沿索引实际经过的下一跳转发；本地节点是最接近的节点时，最后一个发送方的撤销消息到达后记录跳数
+		if (route.closest && route.senders.isEmpty()) {
+			VRouterObserver.unindexHop.add(msg.hops);  // 记录撤销消息的跳数
+		}
+		sendUnindex(msg.dataID, route, msg.relay(this.nodeId), protocolID);
+	}
+
+	// 将撤销消息发给索引转发到的下一跳：还在批量消息中排队的索引直接删除，这些下一跳不需要撤销
+	private void sendUnindex(NodeKey dataID, IndexRoute route, IndexMessage msg, int protocolID) {
+		Iterator<Map.Entry<NodeKey, IndexBatchMessage>> queued = pendingBatches.entrySet().iterator();
+		while (queued.hasNext()) {
+			Map.Entry<NodeKey, IndexBatchMessage> e = queued.next();
+			if (e.getValue().remove(dataID)) {
+				route.nextHops.remove(e.getKey());
+				if (e.getValue().size() == 0) queued.remove();
+			}
+		}
+		for (NodeKey next : route.nextHops) {
+			Node targetNode = this.nodeIdtoNode(next);  // 找到目标节点
+			if (unreachable(targetNode)) continue;  // 下一跳已离开网络
+			VRouterProtocol targetPro = (VRouterProtocol) targetNode.getProtocol(protocolID);  // 获取该节点的协议实例
+			send(targetNode, targetPro.indexMessages, msg, protocolID);  // 将撤销消息加入目标节点的索引消息队列
+		}
+		route.nextHops.clear();
+		if (route.isEmpty()) indexRoutes.remove(dataID);
+	}
+
+	// 数据ID的索引路径记录，没有时创建
+	private IndexRoute route(NodeKey dataID) {
+		return indexRoutes.computeIfAbsent(dataID, k -> new IndexRoute());
+	}
+
+	// 发送方撤销数据ID索引的消息是否已经先到达（到达过则消耗这条记录）
+	private boolean unindexedBefore(NodeKey dataID, NodeKey from) {
+		IndexRoute route = indexRoutes.get(dataID);
+		if (route == null || !route.unindexed.remove(from)) {
+			return false;
+		}
+		if (route.isEmpty()) indexRoutes.remove(dataID);
+		return true;
 	}
 
 	/**
@@ -345,41 +767,77 @@ public class VRouterProtocol implements Cloneable, CDProtocol {
 	 * @param dataID The data ID to store.
 	 * @param protocolID The protocol ID.
 	 */
-	public void storeData(BigInteger dataID, int protocolID) {
+	public void storeData(NodeKey dataID, int protocolID) {
 		dataStorage.put(dataID, 0);  // 将数据ID存储到本地数据存储中
+		sendIndex(dataID, protocolID);
+	}
+
+	/**
+	 * Re-send the index messages of all locally stored data, so that they are added to the newest filter generation
+	 * along the index path before the older generations are dropped.
+	 * @param protocolID The protocol ID.
+	 */
+	private void reannounceData(int protocolID) {
+		for (NodeKey dataID : dataStorage.keySet()) {
+			sendIndex(dataID, protocolID);
+			VRouterObserver.reannouncedIndex.add(1);
+		}
+	}
+
+	// 将数据ID的索引消息发送给更接近的节点
+	private void sendIndex(NodeKey dataID, int protocolID) {
+		if (batchIndex()) {
+			queueIndex(dataID, 1);  // 在本节点的下一次 nextCycle 中与其它索引一起发送
+			return;
+		}
 		IndexMessage msg = new IndexMessage(dataID, this.nodeId);  // 创建索引消息
-		BigInteger[] closerNodes = getCloserNodes(msg.dataID);  // 获取离目标数据ID更接近的节点
+		int closerCount = routingTable.selectLiveNeighbours(msg.dataID);  // 获取离目标数据ID更接近的节点
+		IndexRoute route = route(dataID);
 
 		// 将索引消息发送给更接近的节点
-		for (int i = 0; i < closerNodes.length; i++) {
-			Node targetNode = this.nodeIdtoNode(closerNodes[i]);  // 找到目标节点
+		for (int i = 0; i < closerCount; i++) {
+			IndexRoute.addOnce(route.nextHops, routingTable.selected(i));  // 记录下一跳，撤销索引时使用
+			Node targetNode = this.nodeIdtoNode(routingTable.selected(i));  // 找到目标节点
 			VRouterProtocol targetPro = (VRouterProtocol) targetNode.getProtocol(protocolID);  // 获取该节点的协议实例
-			targetPro.indexMessages.add(msg);  // 将索引消息加入目标节点的索引消息队列
+			send(targetNode, targetPro.indexMessages, msg, protocolID);  // 将索引消息加入目标节点的索引消息队列
 		}
 	}
 
 	/**
-	 * Get the closer nodes to the target dataID.
-	 * @param targetID The target data ID to find closer nodes.
-	 * @return An array of closer node IDs.
+	 * Remove locally stored data and propagate an un-index message to the next hops the index of storeData was sent
+	 * to; an index still queued in a batch is dropped instead. The data ID is only removed from the backward routing
+	 * tables when the filters support deletion (BLOOM_FILTER counting or cuckoo); otherwise it keeps matching until
+	 * the end of the run.
+	 * @param dataID The data ID to remove.
+	 * @param protocolID The protocol ID.
+	 * @return false if the data was not stored on this node.
 	 */
-	public BigInteger[] getCloserNodes(BigInteger targetID) {
-		BigInteger[] neighbors = routingTable.getNeighbours(targetID);  // 获取目标数据ID的邻居节点
-
-		int targetFlag = 0;
-		for (int i = 0; i < neighbors.length; i++) {
-			// 如果目标数据ID距离本地节点更远，停止遍历
-			if (Util.distance(neighbors[i], targetID).compareTo(Util.distance(this.nodeId, targetID)) >= 0) break;
-			targetFlag++;
+	public boolean removeData(NodeKey dataID, int protocolID) {
+		if (dataStorage.remove(dataID) == null) {
+			return false;
+		}
+		IndexRoute route = indexRoutes.get(dataID);
+		if (route != null) {
+			sendUnindex(dataID, route, IndexMessage.unindex(dataID, this.nodeId), protocolID);  // 创建并发送撤销索引的消息
 		}
+		return true;
+	}
 
-		// 选择距离目标数据ID更接近的节点
-		BigInteger[] closerNodes = new BigInteger[Math.min(targetFlag, KademliaCommonConfig.ALPHA)];
-		// 复制邻居节点
-		for (int i = 0; i < Math.min(targetFlag, KademliaCommonConfig.ALPHA); i++) {
-			closerNodes[i] = neighbors[i];
+	// handledIndex 记录的时间窗口：过滤器分代时每个时间窗口重新转发一次索引
+	private static int indexWindow() {
+		if (VRouterCommonConfig.FILTER_GENERATIONS == 0) {
+			return 1;
 		}
-		return closerNodes;  // 返回更接近的节点
+		return (int) ContactWithBloomFilter.currentWindow();
+	}
+
+	/**
+	 * Get the closer nodes to the target dataID.
+	 * @param targetID The target data ID to find closer nodes.
+	 * @return An array of closer node IDs (at most ALPHA, sorted by distance).
+	 */
+	public NodeKey[] getCloserNodes(NodeKey targetID) {
+		return routingTable.getNeighbours(targetID);  // 路由表只返回比本地节点更接近的邻居
 	}
 	public HashMap<String, Object> getDataMetrics() {
 		HashMap<String, Object> metrics = new HashMap<>();
@@ -0,0 +1,56 @@
+package vRouter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Zipf 分布：n 个元素中第 k 个（从 0 开始）被选中的概率与 1 / (k + 1)^exponent 成正比，exponent 为 0 时为均匀分布。
+ * 元素个数可以随时变化（例如数据不断被存储或删除），权重的前缀和按需延长，每次抽样为一次二分查找。
+ */
+public class ZipfDistribution {
+
+    private final double exponent;
+
+    // 前 i + 1 个元素的权重之和
+    private double[] prefix = new double[0];
+    private int computed = 0;
+
+    /**
+     * 创建一个 Zipf 分布
+     *
+     * @param exponent 指数，不能为负
+     */
+    public ZipfDistribution(double exponent) {
+        this.exponent = exponent;
+    }
+
+    /**
+     * 从 n 个元素中按 Zipf 分布抽取一个
+     *
+     * @param n 元素个数，至少为 1
+     * @param r 随机数生成器
+     * @return 元素的排名（从 0 开始）
+     */
+    public int sample(int n, Random r) {
+        extend(n);
+        double u = r.nextDouble() * prefix[n - 1];
+        int k = Arrays.binarySearch(prefix, 0, n, u);
+        return Math.min(k >= 0 ? k + 1 : -k - 1, n - 1);
+    }
+
+    // 计算前 n 个元素的前缀和
+    private void extend(int n) {
+        if (n <= computed) {
+            return;
+        }
+        if (n > prefix.length) {
+            prefix = Arrays.copyOf(prefix, Math.max(n, 2 * prefix.length));
+        }
+        double sum = computed == 0 ? 0 : prefix[computed - 1];
+        for (int k = computed; k < n; k++) {
+            sum += Math.pow(k + 1, -exponent);
+            prefix[k] = sum;
+        }
+        computed = n;
+    }
+}